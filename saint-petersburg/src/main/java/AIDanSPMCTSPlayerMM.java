@@ -1,9 +1,10 @@
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
-public class AIDanSPMCTSPlayerMM extends SPPlayer { // simplified and ported from
+public class AIDanSPMCTSPlayerMM extends SPPlayer implements Cloneable, SPRootParallelSearch.Searcher<AIDanSPMCTSPlayerMM> { // simplified and ported from
     // Marc Lanctot's OpenSpiel MCTS implementation in C++
 
     double uctC = 2.0; // UCT exploration constant
@@ -14,6 +15,9 @@ public class AIDanSPMCTSPlayerMM extends SPPlayer { // simplified and ported fro
     boolean verbose = true; // Verbosity flag
     Random chanceSeedRng = new java.util.Random(); // RNG for chance seeds
     int nodes = 0; // Node counter
+    SPMCTSTree tree = new SPMCTSTree(); // Search tree, its arrays reused from move to move
+    int numThreads = 1; // Threads searching independent trees from the root, merged to choose the action (root parallelization)
+    private SPRootParallelSearch<AIDanSPMCTSPlayerMM> rootSearch = null; // searchers of the other trees, created on first use
     // time management fields
     private long startMs = UNKNOWN_TIME; // start time of move computation
     int endEstimatePlayouts = 3; // number of playouts to estimate the
@@ -27,111 +31,45 @@ public class AIDanSPMCTSPlayerMM extends SPPlayer { // simplified and ported fro
         super("AIDanSPMCTSPlayerMM");
     }
 
-    class SearchNode {
-        public int action = 0; // action index taken to get to this node
-        public int player = 0; // player that acted to get to this node,
-                          // or a negative seed value for a chance node
-        public int exploreCount = 0; // number of times node was explored
-        public double totalReward = 0.0; // sum of rewards from simulations
-        public final List<SearchNode> children = new ArrayList<>(); // child nodes
-
-        // constructor initializing action and player
-        public SearchNode(int action, int player) {
-            this.action = action;
-            this.player = player;
-        }
-
-        public double uctValue(int parentExploreCount, double uctC) {
-            if (exploreCount == 0) {
-                return Double.POSITIVE_INFINITY; // prioritize unvisited nodes
-            }
-            double avgReward = totalReward / exploreCount;
-            double explorationTerm = uctC * Math.sqrt(Math.log(parentExploreCount) / exploreCount);
-            return avgReward + explorationTerm;
-        }
-
-        public SearchNode bestChildByVisits() {
-            return children.stream()
-                    .max((a, b) -> Integer.compare(a.exploreCount, b.exploreCount))
-                    .orElse(null);
-        }
-
-        public SearchNode bestChildUCT() {
-            return children.stream()
-                    .max((a, b) -> Double.compare(a.uctValue(exploreCount, uctC),
-                            b.uctValue(exploreCount, uctC)))
-                    .orElse(null);
-        }
-
-        public String toString() {
-            return String.format("%d: Player: %d, Visits: %d, Total Reward: %f, Q: %.2f, Children: %d",
-                    action, player, exploreCount, totalReward,
-                    (exploreCount == 0 ? 0.0 : totalReward / exploreCount),
-                    children.size()
-            );
-        }
-
-        public String childrenStr(int parentExploreCount, double uctC) {
-            StringBuilder sb = new StringBuilder();
-            Comparator<SearchNode> uctComparator = (a, b) -> Double.compare(
-                    a.uctValue(parentExploreCount, uctC),
-                    b.uctValue(parentExploreCount, uctC)
-            );
-            children.stream()
-                    .sorted(uctComparator.reversed())
-                    .forEach(child -> {
-                        sb.append(String.format("%s\n", child.toString()));
-                    });
-            return sb.toString();
-        }
-
-        public boolean isChanceNode() {
-            return player < 0;
-        }   
-    }
-
     @Override
     public int getAction(SPState state) {
         startMs = System.currentTimeMillis();
         // get the legal actions for the current state,
         // compute the number of legal actions,
-        // call MCTSSearch to get the root SearchNode,
+        // call MCTSSearch to get the root node,
         // select the best child by visits,
         // and return the action of that child.
         ArrayList<SPAction> legalActions = state.getLegalActions();
         int numLegalActions = legalActions.size();
-        SearchNode root = MCTSSearch(state);
-        SearchNode bestChild = root.bestChildByVisits();
+        if (numThreads > 1) {
+            return rootParallelAction(state);
+        }
+        int root = MCTSSearch(state);
+        int bestChild = tree.bestChildByVisits(root);
         if (verbose) {
             System.out.println("Number of legal actions: " + numLegalActions);
-            System.out.println("Root Node:\n" + root.toString());
-            System.out.println("Children:\n" + root.childrenStr(root.exploreCount, uctC));
-            System.out.println("Selected Action: " + bestChild.action);
+            System.out.println("Root Node:\n" + tree.toString(root));
+            System.out.println("Children:\n" + tree.childrenString(root, uctC));
+            System.out.println("Selected Action: " + tree.getAction(bestChild));
         }
-        return bestChild.action;
+        return tree.getAction(bestChild);
+    }
+
+    // Search from the root state, returning the root node of the tree
+    public int MCTSSearch(SPState rootState) { // UCT_SEARCH
+        long deadlineMillis = System.currentTimeMillis() + turnSearchTimeMillis(rootState);
+        return MCTSSearch(rootState, deadlineMillis);
     }
 
-    public SearchNode MCTSSearch(SPState rootState) { // UCT_SEARCH
+    // The time to search for this move
+    private long turnSearchTimeMillis(SPState rootState) {
         long turnSearchTimeMillis = 1000L; // default fixed time per move
         if (timeRemainingMillis != UNKNOWN_TIME) {
             // Estimate the number of decisions remaining (including this)
             // For this we do a specified number of playouts, count the
             //   current player decisions, and average.
-            int currentPlayer = rootState.playerTurn;
-            int totalDecisions = 0;
-            for (int p = 0; p < endEstimatePlayouts; p++) {
-                SPState simState = rootState.clone();
-                while (!simState.isGameOver()) {
-                    if (simState.playerTurn == currentPlayer) {
-                        totalDecisions++;
-                    }
-                    ArrayList<SPAction> legalActions = simState.getLegalActions();
-                    int actionIndex = (int) (Math.random() * legalActions.size());
-                    SPAction action = legalActions.get(actionIndex);
-                    simState = action.take();
-                }
-            }
-            double movesExpected = (double) totalDecisions / endEstimatePlayouts;
+            double movesExpected = SPCompactState.estimateDecisionsRemaining(rootState, endEstimatePlayouts,
+                    ThreadLocalRandom.current());
             if (verbose) { // print the estimated number of decisions remaining
                 System.out.printf("Estimated decisions remaining: %.2f\n", movesExpected);
             }
@@ -141,27 +79,33 @@ public class AIDanSPMCTSPlayerMM extends SPPlayer { // simplified and ported fro
             turnSearchTimeMillis = Math.min(turnSearchTimeMillis, 
                 timeRemainingMillis / 20L);
         }
+        return turnSearchTimeMillis;
+    }
+
+    // Search from the root state until the deadline or numIterations, returning the root node of the tree
+    @Override
+    public int MCTSSearch(SPState rootState, long deadlineMillis) {
         // Define variables to support periodic checking of the clock
         int numBlockIterations = 100; // check time every 100 iterations
         long lastIterationBlockMillis = UNKNOWN_TIME; // time since last check
         long blockStartMillis = System.currentTimeMillis();
 
-        SearchNode rootNode = new SearchNode(0, rootState.playerTurn);
-        expand(rootNode, rootState);
         nodes = 1; // reset node counter
+        int rootNode = tree.newRoot(rootState.playerTurn);
+        expand(rootNode, rootState);
         startMs = System.currentTimeMillis();
 
-        List<SearchNode> path = new ArrayList<>(); // store sequence of
-                                                // SearchNodes visited
+        int[] path = new int[64]; // sequence of nodes visited, grown as needed
+        int pathLength = 0;
+        double[] returns = new double[rootState.numPlayers]; // returns of the current iteration
         for (int iter = 0; iter < numIterations; iter++) { // MCTS loop
             // Check elapsed time every numBlockIterations
             if ((iter + 1) % numBlockIterations == 0) {
                 long currentMillis = System.currentTimeMillis();
                 lastIterationBlockMillis = currentMillis - blockStartMillis;
-                long elapsedMillis = currentMillis - startMs;
-                // If another block of the same duration would exceed
-                // the allocated time, break
-                if (elapsedMillis + lastIterationBlockMillis > turnSearchTimeMillis) {
+                // If another block of the same duration would pass
+                // the deadline, break
+                if (currentMillis + lastIterationBlockMillis > deadlineMillis) {
                     if (verbose) {
                         System.out.printf("MCTS terminating at iteration %d due to time limit.\n", iter + 1);
                     }
@@ -171,8 +115,9 @@ public class AIDanSPMCTSPlayerMM extends SPPlayer { // simplified and ported fro
             }
 
             SPState state = rootState.clone();
-            path.clear();
-            SearchNode node = rootNode;
+            state.skipForcedMoves = true; // no tree nodes or playout steps for forced moves
+            pathLength = 0;
+            int node = rootNode;
 
             // Selection/Expansion phase (TREE_POLICY)
             // While the state is non-terminal:
@@ -189,27 +134,30 @@ public class AIDanSPMCTSPlayerMM extends SPPlayer { // simplified and ported fro
             //   have just left the search tree.
 
             while (!state.isGameOver()) {
-                path.add(node);
-                if (node.children.isEmpty()) {
+                if (pathLength + 2 > path.length) {
+                    path = Arrays.copyOf(path, 2 * path.length);
+                }
+                path[pathLength++] = node;
+                if (!tree.isExpanded(node)) {
                     // Node is not expanded
                     expand(node, state); // expand and break
                     break;
                 }
                 // Node is expanded; select best child by UCT
-                SearchNode nextNode = node.bestChildUCT();
-                if (nextNode.isChanceNode()) {
-                    path.add(nextNode); // add chance node to path
+                int nextNode = tree.bestChildUCT(node, uctC);
+                if (tree.isChanceNode(nextNode)) {
+                    path[pathLength++] = nextNode; // add chance node to path
                     // Chance node: reproduce chance outcome
-                    SPAction chanceAction = state.getLegalActions().get(nextNode.action);
+                    SPAction chanceAction = state.getLegalActions().get(tree.getAction(nextNode));
                     // Use stored seed + action index to seed RNG
                     // Sample one of the chance outcomes
-                    int sampleIndex = (int) (Math.random() * numChanceSamples);
-                    int sampleSeed = nextNode.player + sampleIndex;
+                    int sampleIndex = ThreadLocalRandom.current().nextInt(numChanceSamples);
+                    int sampleSeed = tree.getPlayer(nextNode) + sampleIndex;
                     state = chanceAction.take(sampleSeed);
-                    node = nextNode.children.get(sampleIndex);
+                    node = tree.getFirstChild(nextNode) + sampleIndex;
                 } else {
                     // Non-chance action node
-                    state = state.getLegalActions().get(nextNode.action).take();
+                    state = state.getLegalActions().get(tree.getAction(nextNode)).take();
                     node = nextNode;
                 }
             }
@@ -218,15 +166,11 @@ public class AIDanSPMCTSPlayerMM extends SPPlayer { // simplified and ported fro
             // Early playout termination (EPT) after a fixed depth
             int stepsRemaining = playoutTerminationDepth;
             while (!state.isGameOver() && stepsRemaining > 0) {
-                ArrayList<SPAction> legalActions = state.getLegalActions();
-                int actionIndex = (int) (Math.random() * legalActions.size());
-                SPAction action = legalActions.get(actionIndex);
-                state = action.take();
+                state = state.sampleRandomLegalAction(ThreadLocalRandom.current()).take();
                 stepsRemaining--;
             }
 
             // Evaluate the (possibly non-terminal) state
-            double[] returns = new double[state.numPlayers];
 
             // NOTE: This assumes win probability, but would need to be
             // modified for score difference
@@ -249,17 +193,16 @@ public class AIDanSPMCTSPlayerMM extends SPPlayer { // simplified and ported fro
             }
 
             // Backpropagation phase (BACKUP)
-           for (int i = path.size() - 1; i >= 0; i--) {
-                SearchNode n = path.get(i);
-                n.exploreCount += 1;
-                if (n.player >= 0) {
+            for (int i = pathLength - 1; i >= 0; i--) {
+                int n = path[i];
+                if (!tree.isChanceNode(n)) {
                     // Non-chance node: back up the return for that player
-                    n.totalReward += returns[n.player];
+                    tree.update(n, returns[tree.getPlayer(n)]);
                 }
                 else {
                     // Chance node: acting player is in the child nodes
-                    int actingPlayer = path.get(i + 1).player;
-                    n.totalReward += returns[actingPlayer];
+                    int actingPlayer = tree.getPlayer(path[i + 1]);
+                    tree.update(n, returns[actingPlayer]);
                 }
             }
         }
@@ -269,64 +212,96 @@ public class AIDanSPMCTSPlayerMM extends SPPlayer { // simplified and ported fro
             System.out.printf("MCTS completed in %d ms, %d nodes created.\n",
                     (endMillis - startMs), nodes);
             // Print the root node and its children as well as the selected best child
-            System.out.println("Root Node:\n" + rootNode.toString());
-            System.out.println("Children:\n" + rootNode.childrenStr(rootNode.exploreCount, uctC));
+            System.out.println("Root Node:\n" + tree.toString(rootNode));
+            System.out.println("Children:\n" + tree.childrenString(rootNode, uctC));
         }
     
         return rootNode;
     }
 
-    public void expand(SearchNode node, SPState state) {
+    // Root parallelization (see SPRootParallelSearch), each tree with its own chance seeds
+    private int rootParallelAction(SPState state) {
+        if (rootSearch == null) {
+            rootSearch = new SPRootParallelSearch<>(this);
+        }
+        long deadlineMillis = System.currentTimeMillis() + turnSearchTimeMillis(state);
+        return rootSearch.chooseAction(state, numThreads, deadlineMillis, verbose);
+    }
+
+    // A searcher for another root tree: a copy of this player sharing its (read-only) evaluation features, with a tree
+    // and a chance seed stream of its own
+    @Override
+    public AIDanSPMCTSPlayerMM newRootWorker() {
+        try {
+            AIDanSPMCTSPlayerMM worker = (AIDanSPMCTSPlayerMM) clone();
+            worker.verbose = false;
+            worker.numThreads = 1;
+            worker.chanceSeedRng = new Random(chanceSeedRng.nextLong());
+            worker.tree = new SPMCTSTree();
+            worker.rootSearch = null;
+            return worker;
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(); // Can't happen
+        }
+    }
+
+    // Update a root worker with search settings changed since it was created
+    @Override
+    public void copySettingsTo(AIDanSPMCTSPlayerMM worker) {
+        worker.uctC = uctC;
+        worker.numChanceSamples = numChanceSamples;
+        worker.numIterations = numIterations;
+        worker.playoutTerminationDepth = playoutTerminationDepth;
+    }
+
+    @Override
+    public SPMCTSTree getTree() {
+        return tree;
+    }
+
+    public void expand(int node, SPState state) {
         // Assumes state is non-terminal, non-chance
-        // For each non-chance action, add a child SearchNode.
+        // For each non-chance action, add a child node.
         // For each chance action, create an expanded chance-sampling
-        //   SearchNode with a negative "player" value for reproducable
+        //   node with a negative "player" value for reproducable
         //   chance-sampling, and children that reflect the player
         //   that chose the chance action.
 
         ArrayList<SPAction> legalActions = state.getLegalActions();
-
-        // Create a random permutation of the action indices
-        // in int array actionIndices
         int numLegalActions = legalActions.size();
-        int[] actionIndices = new int[numLegalActions];
-        for (int i = 0; i < numLegalActions; i++) {
-            actionIndices[i] = i;
+        int firstChild = tree.addChildren(node, numLegalActions);
+        nodes += numLegalActions;
+        int player = state.playerTurn;
+        for (int a = 0; a < numLegalActions; a++) {
+            SPAction action = legalActions.get(a);
+            if (action.isChanceAction()) {
+                // Create chance-sampling node
+                int chanceSeed = -(chanceSeedRng.nextInt(Integer.MAX_VALUE - numChanceSamples) + numChanceSamples);
+                tree.setNode(firstChild + a, a, chanceSeed);
+            } else {
+                // Non-chance action node
+                tree.setNode(firstChild + a, a, player);
+            }
         }
+
+        // Shuffle the children into a random order
         // Fisher-Yates shuffle (really Durstenfeld's shuffle 1964
         // and later Knuth shuffle 1969)
         for (int i = numLegalActions - 1; i > 0; i--) {
-            int j = (int) (Math.random() * (i + 1));
-            int temp = actionIndices[i];
-            actionIndices[i] = actionIndices[j];
-            actionIndices[j] = temp;
+            int j = ThreadLocalRandom.current().nextInt(i + 1);
+            tree.swapNodes(firstChild + i, firstChild + j);
         }
 
-        for (int a : actionIndices) {
-            SPAction action = legalActions.get(a);
-            int player = state.playerTurn;
-            if (action.isChanceAction()) {
-                // Create chance-sampling node
-                int chanceSeed = -(chanceSeedRng.nextInt(Integer.MAX_VALUE - numChanceSamples) + numChanceSamples);
-                SearchNode chanceNode = new SearchNode(a, chanceSeed);
-                node.children.add(chanceNode);
-                nodes++;
-
-                // Create children for each chance outcome
+        // Create children for each chance outcome
+        for (int child = firstChild; child < firstChild + numLegalActions; child++) {
+            if (tree.isChanceNode(child)) {
+                int firstSample = tree.addChildren(child, numChanceSamples);
+                nodes += numChanceSamples;
                 for (int sample = 0; sample < numChanceSamples; sample++) {
-                    SearchNode childNode = new SearchNode(a, player);
-                    chanceNode.children.add(childNode);
-                    nodes++;
+                    tree.setNode(firstSample + sample, tree.getAction(child), player);
                 }
-            } else {
-                // Non-chance action node
-                SearchNode childNode = new SearchNode(a, player);
-                node.children.add(childNode);
-                nodes++;
             }
         }
-
-        
     }
 
 
@@ -1,4 +1,5 @@
 import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class AIDanSPPlayerFMCTrainerTimeManaged extends SPPlayer {
 
@@ -32,21 +33,8 @@ public class AIDanSPPlayerFMCTrainerTimeManaged extends SPPlayer {
         long turnSearchTimeMillis = 1000L;
 
         if (timeRemainingMillis != UNKNOWN_TIME) {
-            int currentPlayer = state.playerTurn;
-            int totalDecisions = 0;
-            for (int p = 0; p < endEstimatePlayouts; p++) {
-                SPState simState = state.clone();
-                while (!simState.isGameOver()) {
-                    if (simState.playerTurn == currentPlayer) {
-                        totalDecisions++;
-                    }
-                    ArrayList<SPAction> legalActions = simState.getLegalActions();
-                    int actionIndex = (int) (Math.random() * legalActions.size());
-                    SPAction action = legalActions.get(actionIndex);
-                    simState = action.take();
-                }
-            }
-            double movesExpected = (double) totalDecisions / endEstimatePlayouts;
+            double movesExpected = SPCompactState.estimateDecisionsRemaining(state, endEstimatePlayouts,
+                    ThreadLocalRandom.current());
             if (verbose) {
                 System.out.printf("Estimated decisions remaining: %.2f\n", movesExpected);
             }
@@ -55,6 +43,15 @@ public class AIDanSPPlayerFMCTrainerTimeManaged extends SPPlayer {
                     timeRemainingMillis / 20L);
         }
         
+        // One simulation state is played forward and undone back to the root for every simulation
+        SPState simState = state.clone();
+        ArrayList<SPAction> simActions = simState.getLegalActions();
+        SPUndoRecord[] undoRecords = new SPUndoRecord[playoutTerminationDepth + 1];
+        for (int k = 0; k < undoRecords.length; k++) {
+            undoRecords[k] = new SPUndoRecord();
+        }
+        SPAction[] takenActions = new SPAction[playoutTerminationDepth + 1];
+
         double[] actionTotalValues = new double[numActions];
         int simsPerActionCount = 0;
         long blockStartMillis = System.currentTimeMillis();
@@ -76,25 +73,27 @@ public class AIDanSPPlayerFMCTrainerTimeManaged extends SPPlayer {
             }
 
             for (int i = 0; i < numActions; i++) {
-                SPState depth1Copy = state.clone();
-                SPAction action = depth1Copy.getLegalActions().get(i);
-                action.take();
-
-                SPState simCopy = depth1Copy.clone();
+                int numTaken = 0;
+                takenActions[numTaken] = simActions.get(i);
+                takenActions[numTaken].take(undoRecords[numTaken++]);
 
-                for (int k = 0; !simCopy.isGameOver() && k < playoutTerminationDepth; k++) {
-                    ArrayList<SPAction> legalActions = simCopy.getLegalActions();
-                    SPAction randomAction = legalActions.get((int) (Math.random() * legalActions.size()));
-                    randomAction.take();
+                for (int k = 0; !simState.isGameOver() && k < playoutTerminationDepth; k++) {
+                    takenActions[numTaken] = simState.sampleRandomLegalAction(ThreadLocalRandom.current());
+                    takenActions[numTaken].take(undoRecords[numTaken++]);
                 }
 
-                int scoreDiff = simCopy.playerPoints[state.playerTurn] - simCopy.playerPoints[1 - state.playerTurn];
-                double heuristicValue = eval(simCopy) + 0.005 * scoreDiff;
-                if (state.playerTurn != simCopy.playerTurn) {
+                int scoreDiff = simState.playerPoints[state.playerTurn] - simState.playerPoints[1 - state.playerTurn];
+                double heuristicValue = eval(simState) + 0.005 * scoreDiff;
+                if (state.playerTurn != simState.playerTurn) {
                     heuristicValue = 1 - heuristicValue;
                 }
                 
                 actionTotalValues[i] += heuristicValue;
+
+                while (numTaken > 0) { // undo back to the root
+                    numTaken--;
+                    takenActions[numTaken].undo(simState, undoRecords[numTaken]);
+                }
             }
             
             simsPerActionCount++;
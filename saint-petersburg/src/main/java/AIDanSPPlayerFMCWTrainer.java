@@ -1,4 +1,5 @@
 import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class AIDanSPPlayerFMCWTrainer extends SPPlayer {
 
@@ -24,16 +25,13 @@ public class AIDanSPPlayerFMCWTrainer extends SPPlayer {
             // chance behaviors should be sampled -> these lines belong insideloop
             double estValue = 0.0;
             for (int j = 0; j < numSimulationsPerAction; j++) {
-                SPState depth1Copy = state.clone();
-                SPAction action = depth1Copy.getLegalActions().get(i);
-                action.take();
+                SPState depth1Copy = SPStatePool.borrow(state); // scratch copy, released after evaluation
+                actions.get(i).take(depth1Copy);
 
-                SPState simCopy = depth1Copy.clone();
+                SPState simCopy = depth1Copy;
 
                 for (int k = 0; !simCopy.isGameOver() && k < playoutTerminationDepth; k++) {
-                    ArrayList<SPAction> legalActions = simCopy.getLegalActions();
-                    SPAction randomAction = legalActions.get((int) (Math.random() * legalActions.size()));
-                    randomAction.take();
+                    simCopy.sampleRandomLegalAction(ThreadLocalRandom.current()).take();
                 }
 
                 int scoreDiff = simCopy.playerPoints[state.playerTurn] - simCopy.playerPoints[1 - state.playerTurn];
@@ -43,6 +41,7 @@ public class AIDanSPPlayerFMCWTrainer extends SPPlayer {
                                                          // is 1 minus the opponent's value
                 }
                 estValue += heuristicValue;
+                SPStatePool.release(simCopy);
             }
             estValue /= numSimulationsPerAction;
             if (estValue > bestValue) {
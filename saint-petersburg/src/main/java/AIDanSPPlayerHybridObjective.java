@@ -1,4 +1,5 @@
 import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class AIDanSPPlayerHybridObjective extends SPPlayer {
 	
@@ -30,9 +31,7 @@ public class AIDanSPPlayerHybridObjective extends SPPlayer {
             	SPState simCopy = depth1Copy.clone();
                 
                 for (int k = 0; !simCopy.isGameOver() && k < playoutTerminationDepth; k++) {
-                    ArrayList<SPAction> legalActions = simCopy.getLegalActions();
-                    SPAction randomAction = legalActions.get((int) (Math.random() * legalActions.size()));
-                    randomAction.take();
+                    simCopy.sampleRandomLegalAction(ThreadLocalRandom.current()).take();
                 }
                 
                 double heuristicValue = eval(simCopy);
@@ -9,7 +9,7 @@ import java.util.List;
 
 import smile.classification.LogisticRegression;
 
-public class AIDanSPStateFeaturesLR3 {
+public class AIDanSPStateFeaturesLR3 implements SPStateEvaluator {
     String modelFilename = "AIDanSPLogisticRegression3.model";
     LogisticRegression.Binomial model;
     ArrayList<SPFeature> features;
@@ -283,9 +283,7 @@ public class AIDanSPStateFeaturesLR3 {
         }
 
         public Object getValue(SPState state) {
-            int pointsPerRound = state.playerWorkers.get(state.playerTurn).stream().mapToInt(card -> card.points).sum()
-                    + state.playerBuildings.get(state.playerTurn).stream().mapToInt(card -> card.points).sum()
-                    + state.playerAristocrats.get(state.playerTurn).stream().mapToInt(card -> card.points).sum();
+            int pointsPerRound = state.playerPointsPerRound[state.playerTurn];
             return pointsPerRound;
         }
     }
@@ -297,12 +295,8 @@ public class AIDanSPStateFeaturesLR3 {
         }
 
         public Object getValue(SPState state) {
-            int pointsPerRound = state.playerWorkers.get(state.playerTurn).stream().mapToInt(card -> card.points).sum()
-                    + state.playerBuildings.get(state.playerTurn).stream().mapToInt(card -> card.points).sum()
-                    + state.playerAristocrats.get(state.playerTurn).stream().mapToInt(card -> card.points).sum();
-            int opponentPointsPerRound = state.playerWorkers.get(1 - state.playerTurn).stream().mapToInt(card -> card.points).sum()
-                    + state.playerBuildings.get(1 - state.playerTurn).stream().mapToInt(card -> card.points).sum()
-                    + state.playerAristocrats.get(1 - state.playerTurn).stream().mapToInt(card -> card.points).sum();
+            int pointsPerRound = state.playerPointsPerRound[state.playerTurn];
+            int opponentPointsPerRound = state.playerPointsPerRound[1 - state.playerTurn];
             return pointsPerRound - opponentPointsPerRound;
         }
     }
@@ -314,9 +308,7 @@ public class AIDanSPStateFeaturesLR3 {
         }
 
         public Object getValue(SPState state) {
-            int rublesPerRound = state.playerWorkers.get(state.playerTurn).stream().mapToInt(card -> card.rubles).sum()
-                    + state.playerBuildings.get(state.playerTurn).stream().mapToInt(card -> card.rubles).sum()
-                    + state.playerAristocrats.get(state.playerTurn).stream().mapToInt(card -> card.rubles).sum();
+            int rublesPerRound = state.playerRublesPerRound[state.playerTurn];
             return rublesPerRound;
         }
     }
@@ -328,12 +320,8 @@ public class AIDanSPStateFeaturesLR3 {
         }
 
         public Object getValue(SPState state) {
-            int rublesPerRound = state.playerWorkers.get(state.playerTurn).stream().mapToInt(card -> card.rubles).sum()
-                    + state.playerBuildings.get(state.playerTurn).stream().mapToInt(card -> card.rubles).sum()
-                    + state.playerAristocrats.get(state.playerTurn).stream().mapToInt(card -> card.rubles).sum();
-            int opponentRublesPerRound = state.playerWorkers.get(1 - state.playerTurn).stream().mapToInt(card -> card.rubles).sum()
-                    + state.playerBuildings.get(1 - state.playerTurn).stream().mapToInt(card -> card.rubles).sum()
-                    + state.playerAristocrats.get(1 - state.playerTurn).stream().mapToInt(card -> card.rubles).sum();
+            int rublesPerRound = state.playerRublesPerRound[state.playerTurn];
+            int opponentRublesPerRound = state.playerRublesPerRound[1 - state.playerTurn];
             return rublesPerRound - opponentRublesPerRound;
         }
     }
@@ -345,7 +333,7 @@ public class AIDanSPStateFeaturesLR3 {
         }
 
         public Object getValue(SPState state) {
-            return state.playerAristocrats.get(state.playerTurn).stream().distinct().count();
+            return state.getNumUniqueAristocrats(state.playerTurn);
         }
     }
 
@@ -356,8 +344,8 @@ public class AIDanSPStateFeaturesLR3 {
         }
 
         public Object getValue(SPState state) {
-            long uniqueAristocrats = state.playerAristocrats.get(state.playerTurn).stream().distinct().count();
-            long opponentUniqueAristocrats = state.playerAristocrats.get(1 - state.playerTurn).stream().distinct().count();
+            long uniqueAristocrats = state.getNumUniqueAristocrats(state.playerTurn);
+            long opponentUniqueAristocrats = state.getNumUniqueAristocrats(1 - state.playerTurn);
             return uniqueAristocrats - opponentUniqueAristocrats;
         }
     }
@@ -369,8 +357,8 @@ public class AIDanSPStateFeaturesLR3 {
         }
 
         public Object getValue(SPState state) {
-            long uniqueAristocrats = Math.min(SPState.MAX_UNIQUE_ARISTOCRATS, state.playerAristocrats.get(state.playerTurn).stream().distinct().count());
-            long opponentUniqueAristocrats = Math.min(SPState.MAX_UNIQUE_ARISTOCRATS, state.playerAristocrats.get(1 - state.playerTurn).stream().distinct().count());
+            long uniqueAristocrats = Math.min(SPState.MAX_UNIQUE_ARISTOCRATS, state.getNumUniqueAristocrats(state.playerTurn));
+            long opponentUniqueAristocrats = Math.min(SPState.MAX_UNIQUE_ARISTOCRATS, state.getNumUniqueAristocrats(1 - state.playerTurn));
             return SPState.UNIQUE_ARISTOCRAT_BONUS_POINTS.get((int) uniqueAristocrats) - SPState.UNIQUE_ARISTOCRAT_BONUS_POINTS.get((int) opponentUniqueAristocrats);
         }
     }
@@ -406,7 +394,7 @@ public class AIDanSPStateFeaturesLR3 {
         }
 
         public Object getValue(SPState state) {
-        	boolean hasWarehouse = state.playerBuildings.get(state.playerTurn).stream().anyMatch(b -> b.name.equals("Warehouse"));
+        	boolean hasWarehouse = state.numWarehouses[state.playerTurn] > 0;
     		return (hasWarehouse ? 4 : 3) - state.playerHands.get(state.playerTurn).size();
         }
     }
@@ -418,9 +406,9 @@ public class AIDanSPStateFeaturesLR3 {
         }
 
         public Object getValue(SPState state) {
-        	boolean curHasWarehouse = state.playerBuildings.get(state.playerTurn).stream().anyMatch(b -> b.name.equals("Warehouse"));
+        	boolean curHasWarehouse = state.numWarehouses[state.playerTurn] > 0;
     		int curHandSpace = (curHasWarehouse ? 4 : 3) - state.playerHands.get(state.playerTurn).size();
-    		boolean oppHasWarehouse = state.playerBuildings.get(1 - state.playerTurn).stream().anyMatch(b -> b.name.equals("Warehouse"));
+    		boolean oppHasWarehouse = state.numWarehouses[1 - state.playerTurn] > 0;
     		int oppHandSpace = (oppHasWarehouse ? 4 : 3) - state.playerHands.get(1 - state.playerTurn).size();
     		return curHandSpace - oppHandSpace;
         }
@@ -490,7 +478,7 @@ public class AIDanSPStateFeaturesLR3 {
     	}
     	
     	public Object getValue(SPState state) {
-    		return state.playerAristocrats.get(state.playerTurn).size() - state.playerAristocrats.get(state.playerTurn).stream().distinct().count();
+    		return state.playerAristocrats.get(state.playerTurn).size() - state.getNumUniqueAristocrats(state.playerTurn);
     	}
     }
 
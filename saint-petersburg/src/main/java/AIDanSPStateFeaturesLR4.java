@@ -363,9 +363,7 @@ public class AIDanSPStateFeaturesLR4 {
         }
 
         public Object getValue(SPState state) {
-            int pointsPerRound = state.playerWorkers.get(state.playerTurn).stream().mapToInt(card -> card.points).sum()
-                    + state.playerBuildings.get(state.playerTurn).stream().mapToInt(card -> card.points).sum()
-                    + state.playerAristocrats.get(state.playerTurn).stream().mapToInt(card -> card.points).sum();
+            int pointsPerRound = state.playerPointsPerRound[state.playerTurn];
             return pointsPerRound;
         }
     }
@@ -377,12 +375,8 @@ public class AIDanSPStateFeaturesLR4 {
         }
 
         public Object getValue(SPState state) {
-            int pointsPerRound = state.playerWorkers.get(state.playerTurn).stream().mapToInt(card -> card.points).sum()
-                    + state.playerBuildings.get(state.playerTurn).stream().mapToInt(card -> card.points).sum()
-                    + state.playerAristocrats.get(state.playerTurn).stream().mapToInt(card -> card.points).sum();
-            int opponentPointsPerRound = state.playerWorkers.get(1 - state.playerTurn).stream().mapToInt(card -> card.points).sum()
-                    + state.playerBuildings.get(1 - state.playerTurn).stream().mapToInt(card -> card.points).sum()
-                    + state.playerAristocrats.get(1 - state.playerTurn).stream().mapToInt(card -> card.points).sum();
+            int pointsPerRound = state.playerPointsPerRound[state.playerTurn];
+            int opponentPointsPerRound = state.playerPointsPerRound[1 - state.playerTurn];
             return pointsPerRound - opponentPointsPerRound;
         }
     }
@@ -394,9 +388,7 @@ public class AIDanSPStateFeaturesLR4 {
         }
 
         public Object getValue(SPState state) {
-            int rublesPerRound = state.playerWorkers.get(state.playerTurn).stream().mapToInt(card -> card.rubles).sum()
-                    + state.playerBuildings.get(state.playerTurn).stream().mapToInt(card -> card.rubles).sum()
-                    + state.playerAristocrats.get(state.playerTurn).stream().mapToInt(card -> card.rubles).sum();
+            int rublesPerRound = state.playerRublesPerRound[state.playerTurn];
             return rublesPerRound;
         }
     }
@@ -408,12 +400,8 @@ public class AIDanSPStateFeaturesLR4 {
         }
 
         public Object getValue(SPState state) {
-            int rublesPerRound = state.playerWorkers.get(state.playerTurn).stream().mapToInt(card -> card.rubles).sum()
-                    + state.playerBuildings.get(state.playerTurn).stream().mapToInt(card -> card.rubles).sum()
-                    + state.playerAristocrats.get(state.playerTurn).stream().mapToInt(card -> card.rubles).sum();
-            int opponentRublesPerRound = state.playerWorkers.get(1 - state.playerTurn).stream().mapToInt(card -> card.rubles).sum()
-                    + state.playerBuildings.get(1 - state.playerTurn).stream().mapToInt(card -> card.rubles).sum()
-                    + state.playerAristocrats.get(1 - state.playerTurn).stream().mapToInt(card -> card.rubles).sum();
+            int rublesPerRound = state.playerRublesPerRound[state.playerTurn];
+            int opponentRublesPerRound = state.playerRublesPerRound[1 - state.playerTurn];
             return rublesPerRound - opponentRublesPerRound;
         }
     }
@@ -425,7 +413,7 @@ public class AIDanSPStateFeaturesLR4 {
         }
 
         public Object getValue(SPState state) {
-            return state.playerAristocrats.get(state.playerTurn).stream().distinct().count();
+            return state.getNumUniqueAristocrats(state.playerTurn);
         }
     }
 
@@ -436,8 +424,8 @@ public class AIDanSPStateFeaturesLR4 {
         }
 
         public Object getValue(SPState state) {
-            long uniqueAristocrats = state.playerAristocrats.get(state.playerTurn).stream().distinct().count();
-            long opponentUniqueAristocrats = state.playerAristocrats.get(1 - state.playerTurn).stream().distinct().count();
+            long uniqueAristocrats = state.getNumUniqueAristocrats(state.playerTurn);
+            long opponentUniqueAristocrats = state.getNumUniqueAristocrats(1 - state.playerTurn);
             return uniqueAristocrats - opponentUniqueAristocrats;
         }
     }
@@ -449,8 +437,8 @@ public class AIDanSPStateFeaturesLR4 {
         }
 
         public Object getValue(SPState state) {
-            long uniqueAristocrats = Math.min(SPState.MAX_UNIQUE_ARISTOCRATS, state.playerAristocrats.get(state.playerTurn).stream().distinct().count());
-            long opponentUniqueAristocrats = Math.min(SPState.MAX_UNIQUE_ARISTOCRATS, state.playerAristocrats.get(1 - state.playerTurn).stream().distinct().count());
+            long uniqueAristocrats = Math.min(SPState.MAX_UNIQUE_ARISTOCRATS, state.getNumUniqueAristocrats(state.playerTurn));
+            long opponentUniqueAristocrats = Math.min(SPState.MAX_UNIQUE_ARISTOCRATS, state.getNumUniqueAristocrats(1 - state.playerTurn));
             return SPState.UNIQUE_ARISTOCRAT_BONUS_POINTS.get((int) uniqueAristocrats) - SPState.UNIQUE_ARISTOCRAT_BONUS_POINTS.get((int) opponentUniqueAristocrats);
         }
     }
@@ -486,7 +474,7 @@ public class AIDanSPStateFeaturesLR4 {
         }
 
         public Object getValue(SPState state) {
-        	boolean hasWarehouse = state.playerBuildings.get(state.playerTurn).stream().anyMatch(b -> b.name.equals("Warehouse"));
+        	boolean hasWarehouse = state.numWarehouses[state.playerTurn] > 0;
     		return (hasWarehouse ? 4 : 3) - state.playerHands.get(state.playerTurn).size();
         }
     }
@@ -498,9 +486,9 @@ public class AIDanSPStateFeaturesLR4 {
         }
 
         public Object getValue(SPState state) {
-        	boolean curHasWarehouse = state.playerBuildings.get(state.playerTurn).stream().anyMatch(b -> b.name.equals("Warehouse"));
+        	boolean curHasWarehouse = state.numWarehouses[state.playerTurn] > 0;
     		int curHandSpace = (curHasWarehouse ? 4 : 3) - state.playerHands.get(state.playerTurn).size();
-    		boolean oppHasWarehouse = state.playerBuildings.get(1 - state.playerTurn).stream().anyMatch(b -> b.name.equals("Warehouse"));
+    		boolean oppHasWarehouse = state.numWarehouses[1 - state.playerTurn] > 0;
     		int oppHandSpace = (oppHasWarehouse ? 4 : 3) - state.playerHands.get(1 - state.playerTurn).size();
     		return curHandSpace - oppHandSpace;
         }
@@ -570,7 +558,7 @@ public class AIDanSPStateFeaturesLR4 {
     	}
     	
     	public Object getValue(SPState state) {
-    		return state.playerAristocrats.get(state.playerTurn).size() - state.playerAristocrats.get(state.playerTurn).stream().distinct().count();
+    		return state.playerAristocrats.get(state.playerTurn).size() - state.getNumUniqueAristocrats(state.playerTurn);
     	}
     }
 
@@ -657,15 +645,7 @@ public class AIDanSPStateFeaturesLR4 {
         }
 
         public Object getValue(SPState state) {
-            ArrayList<SPCard> cards;
-            if (phase == 0) {
-                cards = state.playerWorkers.get(player);
-            } else if (phase == 1) {
-                cards = state.playerBuildings.get(player);
-            } else {
-                cards = state.playerAristocrats.get(player);
-            }
-            return cards.stream().mapToInt(card -> card.points).sum();
+            return state.playerPointsPerPhase[player][phase];
         }
     }
 
@@ -680,15 +660,7 @@ public class AIDanSPStateFeaturesLR4 {
         }
 
         public Object getValue(SPState state) {
-            ArrayList<SPCard> cards;
-            if (phase == 0) {
-                cards = state.playerWorkers.get(player);
-            } else if (phase == 1) {
-                cards = state.playerBuildings.get(player);
-            } else {
-                cards = state.playerAristocrats.get(player);
-            }
-            return cards.stream().mapToInt(card -> card.rubles).sum();
+            return state.playerRublesPerPhase[player][phase];
         }
     }
 
@@ -8,13 +8,6 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.CompletionService;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorCompletionService;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import ai.catboost.CatBoostError;
@@ -247,55 +240,23 @@ public class AIDanSPStateFeaturesRF1 {
 
     public void generateCSVData(String filename, int numGames) {
         int numThreads = 10;
-        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
-        
-        CompletionService<String> completionService = new ExecutorCompletionService<>(executor);
-        
         AtomicInteger gamesCompleted = new AtomicInteger(0);
     
         try (PrintWriter writer = new PrintWriter(new FileWriter(filename))) {
             writer.println(getCSVHeader());
     
-            for (int i = 0; i < numGames; i++) {
-                completionService.submit(() -> {
-                    // SPGameTranscript transcript = SPSimulateGame.simulateGame(new SPRandomPlayer(), new SPRandomPlayer());
-                    SPGameTranscript transcript = SPSimulateGame.simulateGame(new SPPlayerFlatMC(), new SPPlayerFlatMC());
-                    return getCSVRows(transcript); 
-                });
-            }
-    
-            for (int i = 0; i < numGames; i++) {
-                try {
-                    Future<String> future = completionService.take(); 
-                    
-                    String csvRow = future.get(); 
-                    
-                    writer.print(csvRow);
-    
-                    int done = gamesCompleted.incrementAndGet();
-                    System.out.println("Generated game " + done + "/" + numGames);
-    
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt(); 
-                    e.printStackTrace();
-                } catch (ExecutionException e) {
-                    System.err.println("Error during game simulation: " + e.getCause());
-                    e.printStackTrace();
+            // SPSimulateGame.simulateGames(numGames, List.of(SPRandomPlayer::new, SPRandomPlayer::new), numThreads, (transcript, game) -> {
+            SPSimulateGame.simulateGames(numGames, List.of(SPPlayerFlatMC::new, SPPlayerFlatMC::new), numThreads, (transcript, game) -> {
+                String csvRows = getCSVRows(transcript);
+                synchronized (writer) {
+                    writer.print(csvRows);
                 }
-            }
+                int done = gamesCompleted.incrementAndGet();
+                System.out.println("Generated game " + done + "/" + numGames);
+            });
     
         } catch (IOException e) {
             e.printStackTrace();
-        } finally {
-            executor.shutdown(); 
-            try {
-                if (!executor.awaitTermination(60, TimeUnit.SECONDS)) {
-                    executor.shutdownNow();
-                }
-            } catch (InterruptedException e) {
-                executor.shutdownNow(); 
-                Thread.currentThread().interrupt();
-            }
         }
     }
 
@@ -523,9 +484,7 @@ public class AIDanSPStateFeaturesRF1 {
         }
 
         public Object getValue(SPState state) {
-            int pointsPerRound = state.playerWorkers.get(state.playerTurn).stream().mapToInt(card -> card.points).sum()
-                    + state.playerBuildings.get(state.playerTurn).stream().mapToInt(card -> card.points).sum()
-                    + state.playerAristocrats.get(state.playerTurn).stream().mapToInt(card -> card.points).sum();
+            int pointsPerRound = state.playerPointsPerRound[state.playerTurn];
             return pointsPerRound;
         }
     }
@@ -539,13 +498,8 @@ public class AIDanSPStateFeaturesRF1 {
         }
 
         public Object getValue(SPState state) {
-            int pointsPerRound = state.playerWorkers.get(state.playerTurn).stream().mapToInt(card -> card.points).sum()
-                    + state.playerBuildings.get(state.playerTurn).stream().mapToInt(card -> card.points).sum()
-                    + state.playerAristocrats.get(state.playerTurn).stream().mapToInt(card -> card.points).sum();
-            int opponentPointsPerRound = state.playerWorkers.get(1 - state.playerTurn).stream()
-                    .mapToInt(card -> card.points).sum()
-                    + state.playerBuildings.get(1 - state.playerTurn).stream().mapToInt(card -> card.points).sum()
-                    + state.playerAristocrats.get(1 - state.playerTurn).stream().mapToInt(card -> card.points).sum();
+            int pointsPerRound = state.playerPointsPerRound[state.playerTurn];
+            int opponentPointsPerRound = state.playerPointsPerRound[1 - state.playerTurn];
             return pointsPerRound - opponentPointsPerRound;
         }
     }
@@ -558,9 +512,7 @@ public class AIDanSPStateFeaturesRF1 {
         }
 
         public Object getValue(SPState state) {
-            int rublesPerRound = state.playerWorkers.get(state.playerTurn).stream().mapToInt(card -> card.rubles).sum()
-                    + state.playerBuildings.get(state.playerTurn).stream().mapToInt(card -> card.rubles).sum()
-                    + state.playerAristocrats.get(state.playerTurn).stream().mapToInt(card -> card.rubles).sum();
+            int rublesPerRound = state.playerRublesPerRound[state.playerTurn];
             return rublesPerRound;
         }
     }
@@ -574,13 +526,8 @@ public class AIDanSPStateFeaturesRF1 {
         }
 
         public Object getValue(SPState state) {
-            int rublesPerRound = state.playerWorkers.get(state.playerTurn).stream().mapToInt(card -> card.rubles).sum()
-                    + state.playerBuildings.get(state.playerTurn).stream().mapToInt(card -> card.rubles).sum()
-                    + state.playerAristocrats.get(state.playerTurn).stream().mapToInt(card -> card.rubles).sum();
-            int opponentRublesPerRound = state.playerWorkers.get(1 - state.playerTurn).stream()
-                    .mapToInt(card -> card.rubles).sum()
-                    + state.playerBuildings.get(1 - state.playerTurn).stream().mapToInt(card -> card.rubles).sum()
-                    + state.playerAristocrats.get(1 - state.playerTurn).stream().mapToInt(card -> card.rubles).sum();
+            int rublesPerRound = state.playerRublesPerRound[state.playerTurn];
+            int opponentRublesPerRound = state.playerRublesPerRound[1 - state.playerTurn];
             return rublesPerRound - opponentRublesPerRound;
         }
     }
@@ -592,7 +539,7 @@ public class AIDanSPStateFeaturesRF1 {
         }
 
         public Object getValue(SPState state) {
-            return state.playerAristocrats.get(state.playerTurn).stream().distinct().count();
+            return state.getNumUniqueAristocrats(state.playerTurn);
         }
     }
 
@@ -605,9 +552,8 @@ public class AIDanSPStateFeaturesRF1 {
         }
 
         public Object getValue(SPState state) {
-            long uniqueAristocrats = state.playerAristocrats.get(state.playerTurn).stream().distinct().count();
-            long opponentUniqueAristocrats = state.playerAristocrats.get(1 - state.playerTurn).stream().distinct()
-                    .count();
+            long uniqueAristocrats = state.getNumUniqueAristocrats(state.playerTurn);
+            long opponentUniqueAristocrats = state.getNumUniqueAristocrats(1 - state.playerTurn);
             return uniqueAristocrats - opponentUniqueAristocrats;
         }
     }
@@ -623,9 +569,9 @@ public class AIDanSPStateFeaturesRF1 {
 
         public Object getValue(SPState state) {
             long uniqueAristocrats = Math.min(SPState.MAX_UNIQUE_ARISTOCRATS,
-                    state.playerAristocrats.get(state.playerTurn).stream().distinct().count());
+                    state.getNumUniqueAristocrats(state.playerTurn));
             long opponentUniqueAristocrats = Math.min(SPState.MAX_UNIQUE_ARISTOCRATS,
-                    state.playerAristocrats.get(1 - state.playerTurn).stream().distinct().count());
+                    state.getNumUniqueAristocrats(1 - state.playerTurn));
             return SPState.UNIQUE_ARISTOCRAT_BONUS_POINTS.get((int) uniqueAristocrats)
                     - SPState.UNIQUE_ARISTOCRAT_BONUS_POINTS.get((int) opponentUniqueAristocrats);
         }
@@ -663,8 +609,7 @@ public class AIDanSPStateFeaturesRF1 {
         }
 
         public Object getValue(SPState state) {
-            boolean hasWarehouse = state.playerBuildings.get(state.playerTurn).stream()
-                    .anyMatch(b -> b.name.equals("Warehouse"));
+            boolean hasWarehouse = state.numWarehouses[state.playerTurn] > 0;
             return (hasWarehouse ? 4 : 3) - state.playerHands.get(state.playerTurn).size();
         }
     }
@@ -677,11 +622,9 @@ public class AIDanSPStateFeaturesRF1 {
         }
 
         public Object getValue(SPState state) {
-            boolean curHasWarehouse = state.playerBuildings.get(state.playerTurn).stream()
-                    .anyMatch(b -> b.name.equals("Warehouse"));
+            boolean curHasWarehouse = state.numWarehouses[state.playerTurn] > 0;
             int curHandSpace = (curHasWarehouse ? 4 : 3) - state.playerHands.get(state.playerTurn).size();
-            boolean oppHasWarehouse = state.playerBuildings.get(1 - state.playerTurn).stream()
-                    .anyMatch(b -> b.name.equals("Warehouse"));
+            boolean oppHasWarehouse = state.numWarehouses[1 - state.playerTurn] > 0;
             int oppHandSpace = (oppHasWarehouse ? 4 : 3) - state.playerHands.get(1 - state.playerTurn).size();
             return curHandSpace - oppHandSpace;
         }
@@ -759,7 +702,7 @@ public class AIDanSPStateFeaturesRF1 {
 
         public Object getValue(SPState state) {
             return state.playerAristocrats.get(state.playerTurn).size()
-                    - state.playerAristocrats.get(state.playerTurn).stream().distinct().count();
+                    - state.getNumUniqueAristocrats(state.playerTurn);
         }
     }
 
@@ -843,15 +786,7 @@ public class AIDanSPStateFeaturesRF1 {
         }
 
         public Object getValue(SPState state) {
-            ArrayList<SPCard> cards;
-            if (phase == 0) {
-                cards = state.playerWorkers.get(player);
-            } else if (phase == 1) {
-                cards = state.playerBuildings.get(player);
-            } else {
-                cards = state.playerAristocrats.get(player);
-            }
-            return cards.stream().mapToInt(card -> card.points).sum();
+            return state.playerPointsPerPhase[player][phase];
         }
     }
 
@@ -866,15 +801,7 @@ public class AIDanSPStateFeaturesRF1 {
         }
 
         public Object getValue(SPState state) {
-            ArrayList<SPCard> cards;
-            if (phase == 0) {
-                cards = state.playerWorkers.get(player);
-            } else if (phase == 1) {
-                cards = state.playerBuildings.get(player);
-            } else {
-                cards = state.playerAristocrats.get(player);
-            }
-            return cards.stream().mapToInt(card -> card.rubles).sum();
+            return state.playerRublesPerPhase[player][phase];
         }
     }
 
@@ -3,6 +3,7 @@ import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class AiDanExpectiminimaxPlayerTimeManaged extends SPPlayer {
 
@@ -53,21 +54,8 @@ public class AiDanExpectiminimaxPlayerTimeManaged extends SPPlayer {
 
         if (timeRemainingMillis != UNKNOWN_TIME) {
             // Estimate the number of decisions remaining (from MCTSPlayer)
-            int currentPlayer = state.playerTurn;
-            int totalDecisions = 0;
-            for (int p = 0; p < endEstimatePlayouts; p++) {
-                SPState simState = state.clone();
-                while (!simState.isGameOver()) {
-                    if (simState.playerTurn == currentPlayer) {
-                        totalDecisions++;
-                    }
-                    ArrayList<SPAction> legalActions = simState.getLegalActions();
-                    int actionIndex = (int) (Math.random() * legalActions.size());
-                    SPAction action = legalActions.get(actionIndex);
-                    simState = action.take();
-                }
-            }
-            double movesExpected = (double) totalDecisions / endEstimatePlayouts;
+            double movesExpected = SPCompactState.estimateDecisionsRemaining(state, endEstimatePlayouts,
+                    ThreadLocalRandom.current());
             if (verbose) { // print the estimated number of decisions remaining
                 System.out.printf("Estimated decisions remaining: %.2f\n", movesExpected);
             }
@@ -97,14 +85,12 @@ public class AiDanExpectiminimaxPlayerTimeManaged extends SPPlayer {
 
             // Root: always maximizing player's turn
             for (int i = 0; i < actions.size(); i++) {
-                SPState copy = state.clone();
-                ArrayList<SPAction> clonedActions = copy.getLegalActions();
-                SPAction actionToTake = clonedActions.get(i);
-                
-                actionToTake.take(); 
+                SPState copy = SPStatePool.borrow(state);
+                actions.get(i).take(copy);
                 
                 // Alpha-beta with chance node sampling
                 double value = alphaBeta(copy, currentDepth - 1, originalPlayer, alpha, beta);
+                SPStatePool.release(copy);
 
                 if (verbose && currentDepth == maxSearchDepth) { // Only print for final depth
                     System.out.printf("  Action %s evaluated to %.4f\n", actions.get(i), value);
@@ -299,7 +285,7 @@ public class AiDanExpectiminimaxPlayerTimeManaged extends SPPlayer {
         double totalValue = 0.0;
         
         for (int sample = 0; sample < chanceSamples; sample++) {
-            SPState copy = state.clone();
+            SPState copy = SPStatePool.borrow(state);
             
             // Shuffle decks slightly to simulate randomness in draws
             if (sample > 0) { // First sample uses original ordering
@@ -313,6 +299,7 @@ public class AiDanExpectiminimaxPlayerTimeManaged extends SPPlayer {
             clonedActions.get(actionIndex).take();
             
             double value = alphaBeta(copy, depth - 1, originalPlayer, alpha, beta);
+            SPStatePool.release(copy);
             totalValue += value;
         }
         
@@ -35,9 +35,7 @@ public class JFMTPlayer2 extends SPPlayer {
                 action.take();
                 SPState simCopy = depth1Copy;
                 for (int k = 0; !simCopy.isGameOver() && k < playoutTerminationDepth; k++) {
-                    ArrayList<SPAction> legalActions = simCopy.getLegalActions();
-                    SPAction randomAction = legalActions.get(rng.nextInt(legalActions.size()));
-                    randomAction.take();
+                    simCopy.sampleRandomLegalAction(rng).take();
                 }
                 double heuristicValue = eval(simCopy);
                 if (state.playerTurn != simCopy.playerTurn) {
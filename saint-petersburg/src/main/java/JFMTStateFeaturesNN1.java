@@ -31,7 +31,7 @@ import org.nd4j.linalg.learning.config.Adam;
 import org.nd4j.linalg.lossfunctions.LossFunctions;
 import org.deeplearning4j.earlystopping.scorecalc.DataSetLossCalculator;
 
-public class JFMTStateFeaturesNN1 {
+public class JFMTStateFeaturesNN1 implements SPStateEvaluator {
     String modelFilename = "JFMTNN2.model";
     ArrayList<SPFeature> features;
     private MultiLayerNetwork model;
@@ -316,6 +316,12 @@ public class JFMTStateFeaturesNN1 {
         return model.output(features, false).getDouble(0);
     }
 
+    // Predict the win probabilities of several states, as predict() does for each, in one forward pass of the network
+    @Override
+    public double[] predictBatch(List<SPState> states) {
+        return SPStateFeaturesNN1.predictBatch(model, features, states);
+    }
+
     // min_deck_size – the number of cards in the smallest phase deck
     class SPFeatureMinDeckSize extends SPFeature {
         public SPFeatureMinDeckSize() {
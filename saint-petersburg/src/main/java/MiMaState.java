@@ -46,26 +46,17 @@ public class MiMaState extends SPState{
 
 		// Determine if the player has room in their hand for another card
 		// Check if the player has a Warehouse building card
-		boolean hasWarehouse = playerBuildings.get(playerTurn).stream().anyMatch(b -> b.name.equals("Warehouse"));
+		boolean hasWarehouse = numWarehouses[playerTurn] > 0;
 		boolean hasRoomInHand = (hasWarehouse ? 4 : 3) - playerHands.get(playerTurn).size() > 0; // Check if the player has room in hand
 
 		// If the player has bought the "Carpenter Workshop", the building costs are reduced by 1
-		boolean hasBuildingDiscount = false;
-		if (playerBuildings.get(playerTurn).stream()
-				.anyMatch(c -> c.name.equals("Carpenter Workshop"))) {
-			hasBuildingDiscount = true;
-		}
+		boolean hasBuildingDiscount = numBuildingDiscounts[playerTurn] > 0;
 
 		// If the player has bought the "Gold Smelter", the aristocrat costs are reduced by 1
-		boolean hasAristocratDiscount = false;
-		if (playerBuildings.get(playerTurn).stream()
-				.anyMatch(c -> c.name.equals("Gold Smelter"))) {
-			hasAristocratDiscount = true;
-		}
+		boolean hasAristocratDiscount = numAristocratDiscounts[playerTurn] > 0;
 
 		// Determine if the player has an unused observatory
-		int numUnusedObservatories = (int) playerBuildings.get(playerTurn).stream()
-				.filter(observatory -> observatory.name.equals("Observatory")).count();
+		int numUnusedObservatories = numObservatories[playerTurn];
 		numUnusedObservatories -= usedObservatories[playerTurn]; // Subtract the number of observatories used this round
 
 		// If they have observed a pile, they must choose what to do with the observed card.
@@ -98,11 +89,7 @@ public class MiMaState extends SPState{
 					cardDestination = playerAristocrats.get(playerTurn);
 				}
 				// Reduce the cost by 1 for each same card in the destination
-				for (SPCard c : cardDestination) {
-					if (c == card) {
-						cost--;
-					}
-				}
+				cost -= playerCardCounts[playerTurn][card.id];
 
 				// If the card is not a trading card, create a buy action if affordable
 				if (!card.isTrading) {
@@ -119,18 +106,15 @@ public class MiMaState extends SPState{
 					// Compute the replaceable cards with associated costs
 					Map<SPCard, Integer> replaceableCards = new HashMap<>();
 					for (SPCard c : cardDestination) {
-						if (c.isTrading) {
-							continue; // cannot replace trading cards with trading cards
+						if (!card.canReplace(c)) {
+							continue; // trading card or incompatible worker card
 						}
-						int replaceCost = cost - c.cost; // Cost of replacing the card
-						if (c.name.equals("Observatory")) {
+						int replaceCost = cost - c.tradeValue; // Cost of replacing the card
+						if (c.hasEffect(SPCard.OBSERVATORY)) {
 							if (numUnusedObservatories < 1) {
 								continue; // Cannot replace an Observatory if none are left unused
 							}
 						}
-						if (card.name.endsWith("Village")) {
-							replaceCost -= 4; // Potjomkin's/Potemkin Village credits 6 while only costing 2
-						}
 						if (replaceCost < 1) {
 							replaceCost = 1; // Ensure the cost is not less than 1
 						}
@@ -150,8 +134,7 @@ public class MiMaState extends SPState{
 		} // end observed card handling
 		else if (phase == PUB_ACTION) {
 			// Determine the number of pubs the player has
-			int numPubs = (int) playerBuildings.get(playerTurn).stream().filter(c -> c.name.equals("Pub")).count();
-			int maxPoints = numPubs * 5; // Each Pub can purchase up to 5 points at 2 rubles/point
+			int maxPoints = numPubs[playerTurn] * 5; // Each Pub can purchase up to 5 points at 2 rubles/point
 			int rubles = playerRubles[playerTurn];
 			for (int points = 0; points <= maxPoints && 2 * points <= rubles; points++) {
 				legalActions.add(new SPPubPointsAction(this, points));
@@ -195,11 +178,7 @@ public class MiMaState extends SPState{
 							cardDestination = playerAristocrats.get(playerTurn);
 						}
 						// Reduce the cost by 1 for each same card in the destination
-						for (SPCard c : cardDestination) {
-							if (c == card) {
-								cost--;
-							}
-						}
+						cost -= playerCardCounts[playerTurn][card.id];
 						// If the card is not a trading card, create a buy action if affordable
 						if (!card.isTrading) {
 							if (cost < 1) {
@@ -214,18 +193,15 @@ public class MiMaState extends SPState{
 							// Compute the replaceable cards with associated costs
 							Map<SPCard, Integer> replaceableCards = new HashMap<>();
 							for (SPCard c : cardDestination) {
-								if (c.isTrading) {
-									continue; // cannot replace trading cards with trading cards
+								if (!card.canReplace(c)) {
+									continue; // trading card or incompatible worker card
 								}
-								int replaceCost = cost - c.cost; // Cost of replacing the card
-								if (c.name.equals("Observatory")) {
+								int replaceCost = cost - c.tradeValue; // Cost of replacing the card
+								if (c.hasEffect(SPCard.OBSERVATORY)) {
 									if (numUnusedObservatories < 1) {
 										continue; // Cannot replace an Observatory if none are left unused
 									}
 								}
-								if (card.name.endsWith("Village")) {
-									replaceCost -= 4; // Potjomkin's/Potemkin Village credits 6 while only costing 2
-								}
 								if (replaceCost < 1) {
 									replaceCost = 1; // Ensure the cost is not less than 1
 								}
@@ -1,4 +1,5 @@
 import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
 // import java.util.Random;
 
 public class OKTurnBasedFeaturesPlayer extends SPPlayer {
@@ -33,9 +34,7 @@ public class OKTurnBasedFeaturesPlayer extends SPPlayer {
             SPState simCopy = depth1Copy.clone();
 
             for(int k = 0; !simCopy.isGameOver() && k < this.playoutTerminationDepth; ++k) {
-               ArrayList<SPAction> legalActions = simCopy.getLegalActions();
-               SPAction randomAction = (SPAction)legalActions.get((int)(Math.random() * (double)legalActions.size()));
-               randomAction.take();
+               simCopy.sampleRandomLegalAction(ThreadLocalRandom.current()).take();
             }
 
             double heuristicValue = this.eval(simCopy);
@@ -1,4 +1,5 @@
 import java.util.ArrayList;
+import java.util.List;
 import java.util.random.RandomGenerator;
 import java.util.random.RandomGeneratorFactory;
 
@@ -6,9 +7,9 @@ public abstract class SPAction {
 
 	protected SPState state; // a state for which this is a legal action
 	protected int player; // The player who is taking the action
-	static RandomGenerator cardRandom = RandomGenerator.of("Xoroshiro128PlusPlus");
-	// Java's default Random uses a linear congruential generator which would have cross-correlations
-	// for sequential seeds used in MCTS for chance nodes.
+	// Seeded takes draw cards with Xoroshiro128PlusPlus.  Java's default Random uses a linear congruential generator
+	// which would have cross-correlations for sequential seeds used in MCTS for chance nodes.
+	static final String SEEDED_RANDOM_ALGORITHM = "Xoroshiro128PlusPlus";
 
 	// Construct an action based on a state for which it is legal
 	SPAction(SPState state) {
@@ -16,26 +17,120 @@ public abstract class SPAction {
 		this.player = state.playerTurn;
 	}
 
+	// Apply the action to the given state, drawing any cards at the positions chosen by draws, returning the resulting
+	// state.  Zone edits are made through the helpers below so that they are logged in undo (if not null).
+	protected abstract SPState apply(SPState state, SPDrawPolicy draws, SPUndoRecord undo);
+
 	// Take the action on the given state, returning the resulting state.
-	abstract public SPState take(SPState state); // assumes no deep cloning of state, returns resulting state
+	public SPState take(SPState state) { // assumes no deep cloning of state, returns resulting state
+		return skipForcedMoves(apply(state, state.getDrawPolicy(), null), null);
+	}
+
+	// Take the action on the given state, recording in undo what is needed to restore the state with undo(state, undo).
+	public SPState take(SPState state, SPUndoRecord undo) {
+		return take(state, state.getDrawPolicy(), undo);
+	}
+
+	// Take the action on the given state with the given random source for card draws, recording undo if not null.
+	public SPState take(SPState state, RandomGenerator random, SPUndoRecord undo) {
+		return take(state, SPDrawPolicy.random(random), undo);
+	}
+
+	// Take the action on the given state with the given policy for card draws, recording undo if not null.
+	public SPState take(SPState state, SPDrawPolicy draws, SPUndoRecord undo) {
+		if (undo != null) {
+			undo.save(state);
+		}
+		return skipForcedMoves(apply(state, draws, undo), undo);
+	}
+
+	// Apply the forced moves following the action if the state skips them, logging them in the action's undo record
+	private static SPState skipForcedMoves(SPState state, SPUndoRecord undo) {
+		if (state.skipForcedMoves) {
+			state.applyForcedMoves(undo);
+		}
+		return state;
+	}
+
+	// Restore the given state to what it was before take(state, undo) recorded the given undo record.
+	public void undo(SPState state, SPUndoRecord undo) {
+		undo.restore(state);
+	}
 	
 	// Check if this action leads to a chance event
 	public boolean isChanceAction() {
 		return this instanceof SPPossibleChanceAction && ((SPPossibleChanceAction) this).isChanceAction();
 	}
 
+	// The deck the action draws cards from if it is a chance action, or -1
+	protected int getChanceDeck() {
+		return -1;
+	}
+
+	// The number of cards the action draws from its chance deck
+	protected int getNumChanceDraws() {
+		return 0;
+	}
+
+	// The distinct outcomes of the action with their probabilities, a single certain outcome if it is not a chance action.
+	// Check getNumChanceOutcomes() first: a large market refill can have millions of outcomes.
+	public List<SPChanceOutcome> getChanceOutcomes() {
+		return SPChanceOutcome.enumerate(state, getChanceDeck(), getNumChanceDraws());
+	}
+
+	public long getNumChanceOutcomes() {
+		return SPChanceOutcome.count(state, getChanceDeck(), getNumChanceDraws());
+	}
+
+	// Sample an outcome of the action from its true distribution
+	public SPChanceOutcome sampleChanceOutcome(RandomGenerator random) {
+		return SPChanceOutcome.sample(state, getChanceDeck(), getNumChanceDraws(), random);
+	}
+
+	// Sample an outcome of the action into a sample the caller reuses, without allocating
+	public void sampleChanceOutcome(RandomGenerator random, SPChanceOutcome.Sample sample) {
+		sample.draw(state, getChanceDeck(), getNumChanceDraws(), random);
+	}
+
+	// Take the action on the given state with the given chance outcome, recording undo if not null.
+	public SPState take(SPState state, SPChanceOutcome outcome, SPUndoRecord undo) {
+		return take(state, outcome.drawPolicy(), undo);
+	}
+
+	// Take the action on the state for which it is legal with the given chance outcome
+	public SPState take(SPChanceOutcome outcome) {
+		return take(state, outcome, null);
+	}
+
 	// Take the action on the state for which it is legal, returning the resulting state.
 	public SPState take() {
 		return take(state);
 	}
 
-	// Take the action given a random generator seed
+	// Take the action on the state for which it is legal, recording an undo record
+	public SPState take(SPUndoRecord undo) {
+		return take(state, undo);
+	}
+
+	// Take the action on the state for which it is legal with the given random source for card draws
+	public SPState take(RandomGenerator random) {
+		return take(state, random, null);
+	}
+
+	// Take the action given a random generator seed, so that any card draws are reproducible
 	public SPState take(long seed) {
-		RandomGenerator preservedCardRandom = cardRandom;
-		cardRandom = RandomGeneratorFactory.of("Xoroshiro128PlusPlus").create(seed);
-		SPState result = take();
-		cardRandom = preservedCardRandom;
-		return result;
+		return take(seed, null);
+	}
+
+	// Take the action given a random generator seed, recording an undo record if undo is not null.
+	// The seeded generator is local to this call, so seeded takes on different threads do not interfere.
+	public SPState take(long seed, SPUndoRecord undo) {
+		return take(state, seededCardRandom(seed), undo);
+	}
+
+	// A new card draw random source for the given seed
+	static RandomGenerator seededCardRandom(long seed) {
+		return RandomGeneratorFactory.of(SEEDED_RANDOM_ALGORITHM).create(seed);
 	}
 
 	// Take the action on the state for which it is legal, 
@@ -45,25 +140,84 @@ public abstract class SPAction {
 	}
 
 	public SPCard drawRandomCard(ArrayList<SPCard> deck) {
-		if (deck.isEmpty()) {
+		return drawRandomCard(state, state.getZoneIndex(deck), state.getDrawPolicy(), null);
+	}
+
+	// Draw the card chosen by draws (a random card in play) from a deck zone, moving the last card of the deck into its place
+	protected SPCard drawRandomCard(SPState state, int deckZone, SPDrawPolicy draws, SPUndoRecord undo) {
+		if (state.getZone(deckZone).isEmpty()) {
 			return null; // No cards to draw
 		}
-		int index = cardRandom.nextInt(deck.size());
+		ArrayList<SPCard> deck = state.getWritableZone(deckZone);
+		int index = draws.drawIndex(deck);
 		SPCard card = deck.get(index);
-		if (index == deck.size() - 1) {
-			deck.remove(index);
-		}
-		else {
-			deck.set(index, deck.get(deck.size() - 1));
-			deck.remove(deck.size() - 1);
+		int lastIndex = deck.size() - 1;
+		if (index != lastIndex) {
+			if (undo != null) {
+				undo.overwritten(state, deckZone, index);
+			}
+			deck.set(index, deck.get(lastIndex));
 		}
+		removeCardAt(state, deckZone, lastIndex, undo);
 		return card;
 	}
 
 	public void refillTopRow(ArrayList<SPCard> deck) {
-		int numCardsToDraw = SPState.MARKET_SIZE - state.upperCardRow.size() - state.lowerCardRow.size();
-		for (int i = 0; i < numCardsToDraw && !deck.isEmpty(); i++) {
-			state.upperCardRow.add(drawRandomCard(deck));
+		refillTopRow(state, state.getZoneIndex(deck), state.getDrawPolicy(), null);
+	}
+
+	// Refill the upper row from a deck.  The drawn cards are placed in card id order, so that the row depends only on which
+	// cards were drawn, not on the order of the draws: a random refill and its SPChanceOutcome give the same row.
+	protected void refillTopRow(SPState state, int deckZone, SPDrawPolicy draws, SPUndoRecord undo) {
+		int numCardsToDraw = Math.min(SPState.MARKET_SIZE - state.upperCardRow.size() - state.lowerCardRow.size(),
+				state.getZone(deckZone).size());
+		SPCard[] drawn = new SPCard[Math.max(numCardsToDraw, 0)];
+		for (int i = 0; i < drawn.length; i++) {
+			SPCard card = drawRandomCard(state, deckZone, draws, undo);
+			int j = i;
+			for (; j > 0 && drawn[j - 1].id > card.id; j--) {
+				drawn[j] = drawn[j - 1]; // insertion sort by card id
+			}
+			drawn[j] = card;
+		}
+		for (SPCard card : drawn) {
+			addCard(state, SPState.UPPER_ROW_ZONE, card, undo);
 		}
 	}
-}
\ No newline at end of file
+
+	// Update a player's holdings aggregates for a card bought (delta 1) or replaced (delta -1)
+	protected static void updateHoldings(SPState state, int player, SPCard card, int delta, SPUndoRecord undo) {
+		state.updateHoldings(player, card, delta);
+		if (undo != null) {
+			undo.holdingsUpdated(player, card, delta);
+		}
+	}
+
+	// Zone edits go through SPState.getWritableZone() so that zones shared with copy-on-write clones are copied first
+
+	// Append a card to a zone
+	protected static void addCard(SPState state, int zone, SPCard card, SPUndoRecord undo) {
+		state.getWritableZone(zone).add(card);
+		if (undo != null) {
+			undo.added(state, zone);
+		}
+	}
+
+	// Remove the first occurrence of a card from a zone, returning whether it was found
+	protected static boolean removeCard(SPState state, int zone, SPCard card, SPUndoRecord undo) {
+		int index = state.getZone(zone).indexOf(card);
+		if (index < 0) {
+			return false;
+		}
+		removeCardAt(state, zone, index, undo);
+		return true;
+	}
+
+	protected static SPCard removeCardAt(SPState state, int zone, int index, SPUndoRecord undo) {
+		SPCard card = state.getWritableZone(zone).remove(index);
+		if (undo != null) {
+			undo.removed(zone, index, card);
+		}
+		return card;
+	}
+}
@@ -4,26 +4,28 @@ public class SPAddToHandAction extends SPAction {
 
 	private SPCard card;
 	private ArrayList<SPCard> cardRow; // null if adding from observed card
+	private final int rowZone; // zone index of the card row, -1 if adding from observed card
 
 	public SPAddToHandAction(SPState state, SPCard card, ArrayList<SPCard> cardRow) {
 		super(state);
 		this.card = card;
 		this.cardRow = cardRow;
+		this.rowZone = state.getZoneIndex(cardRow);
 	}
 
 	@Override
-    public SPState take(SPState state) {
+	protected SPState apply(SPState state, SPDrawPolicy draws, SPUndoRecord undo) {
 		// Player did not pass
 		state.playerPassed[player] = false;	
 		// Remove the card from the card row or observed card
 		if (state.observedCard == null) {
-			cardRow.remove(card);
+			removeCard(state, rowZone, card, undo);
 		}
 		else {
 			state.observedCard = null; // Clear the observed card if it was the one being added
 		}
 		// Add the card to the player's hand
-		state.playerHands.get(player).add(card);
+		addCard(state, SPState.getPlayerZone(player, SPState.HAND_ZONE), card, undo);
 		// Advance the turn to the next player
 		state.playerTurn = (player + 1) % state.numPlayers;
 		return state;
@@ -32,6 +34,6 @@ public class SPAddToHandAction extends SPAction {
 	@Override
 	public String toString() {
 		return String.format("Player %d adds %s to their hand from %s.", player + 1, card.name, 
-			cardRow == null ? "observation" : (cardRow == state.upperCardRow ? "the upper card row" : "the lower card row"));
+			rowZone < 0 ? "observation" : (rowZone == SPState.UPPER_ROW_ZONE ? "the upper card row" : "the lower card row"));
 	}
 }
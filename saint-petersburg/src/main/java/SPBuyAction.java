@@ -10,6 +10,7 @@ public class SPBuyAction extends SPAction {
 	public ArrayList<SPCard> cardDestination; // Where the card is added (e.g., player's workers, buildings, aristocrats)
 	public int cost; // The cost of the card, calculated based on the game state
 	public SPCard replacedCard = null; // The card that is replaced, if buying trading card
+	private final int sourceZone, destinationZone; // Zone indices of the source (-1 if observed) and destination
 
 	SPBuyAction(SPState state, SPCard card, ArrayList<SPCard> cardSource, ArrayList<SPCard> cardDestination, int cost) {
 		super(state);
@@ -17,6 +18,8 @@ public class SPBuyAction extends SPAction {
 		this.cardSource = cardSource;
 		this.cardDestination = cardDestination;
 		this.cost = cost;
+		this.sourceZone = state.getZoneIndex(cardSource);
+		this.destinationZone = state.getZoneIndex(cardDestination);
 	}
 
 	SPBuyAction(SPState state, SPCard card, ArrayList<SPCard> cardSource, ArrayList<SPCard> cardDestination, int cost, SPCard replacedCard) {
@@ -25,7 +28,7 @@ public class SPBuyAction extends SPAction {
 	}
 
 	@Override
-	public SPState take(SPState state) {
+	protected SPState apply(SPState state, SPDrawPolicy draws, SPUndoRecord undo) {
 		// Player did not pass
 		state.playerPassed[state.playerTurn] = false;
 
@@ -34,21 +37,27 @@ public class SPBuyAction extends SPAction {
 
 		// Discard replaced card if relevant
 		if (replacedCard != null) {
-			if (!cardDestination.remove(replacedCard)) {
+			if (!removeCard(state, destinationZone, replacedCard, undo)) {
 				throw new IllegalStateException("Replaced card not found in the destination: " + replacedCard.name);
 			}	
 		}
 
 		// Remove the card being bought
-		if (cardSource == null) {
+		if (sourceZone < 0) {
 			state.observedCard = null; // Clear the observed card if it was the one being bought
 		}
-		else if (!cardSource.remove(card)) {
+		else if (!removeCard(state, sourceZone, card, undo)) {
 			throw new IllegalStateException("Card not found in the source: " + card.name);
 		}
 
 		// Add the card to the destination
-		cardDestination.add(card);
+		addCard(state, destinationZone, card, undo);
+
+		// Keep the holdings aggregates current
+		if (replacedCard != null) {
+			updateHoldings(state, state.playerTurn, replacedCard, -1, undo);
+		}
+		updateHoldings(state, state.playerTurn, card, 1, undo);
 
 		// Advance the turn to the next player
 		state.playerTurn = (state.playerTurn + 1) % state.numPlayers;
@@ -58,13 +67,13 @@ public class SPBuyAction extends SPAction {
 	@Override
 	public String toString() {
 		String cardSourceName = "observation";
-		if (cardSource == state.upperCardRow) {
+		if (sourceZone == SPState.UPPER_ROW_ZONE) {
 			cardSourceName = "the upper card row";
 		}
-		else if (cardSource == state.lowerCardRow) {
+		else if (sourceZone == SPState.LOWER_ROW_ZONE) {
 			cardSourceName = "the lower card row";
 		}
-		else if (cardSource != null) {
+		else if (sourceZone >= 0) {
 			cardSourceName = "their hand";
 		}
 		String replacingCardInformation = "";
@@ -18,13 +18,31 @@ public class SPCard {
 	public static final List<SPCard> ALL_CARDS;
 	public static final int NUM_WORKER_CARDS, NUM_BUILDING_CARDS, NUM_ARISTOCRAT_CARDS, NUM_TRADING_CARDS, NUM_ALL_CARDS;
 
+	// Card effect flags, so that rules code tests bits instead of comparing card names
+	public static final int WAREHOUSE = 1; // plus 1 hand size
+	public static final int CARPENTER_WORKSHOP = 1 << 1; // 1 discount per building
+	public static final int GOLD_SMELTER = 1 << 2; // 1 discount per aristocrat
+	public static final int OBSERVATORY = 1 << 3; // 1 point if unused; buy/hand/discard top card
+	public static final int PUB = 1 << 4; // buy up to 5 points for 2 rubles each
+	public static final int MARIINSKIJ = 1 << 5; // 1 point per aristocrat card
+	public static final int TAX_MAN = 1 << 6; // 1 ruble per worker card
+	public static final int VILLAGE = 1 << 7; // trade cost 6
+	public static final int CZAR_AND_CARPENTER = 1 << 8; // replaces for all worker trading cards
+
+	// Trading replacement table indexed by trading card id: bitset of the ids of cards the trading card may replace
+	private static final long[] REPLACEABLE_CARDS;
+
+	public final int id; // index of the card in ALL_CARDS
+	public final int effects; // bitwise or of the card effect flags
 	public final int edition, quantity, cost, rubles, points;
+	public final int tradeValue; // value credited when the card is replaced by a trading card (e.g. "trade cost 6")
 	public final String type, name, other, abbrev;
 	public final boolean isWorker, isBuilding, isAristocrat, isTrading;
 
 	// Constructor to initialize card properties
-	public SPCard(int edition, int quantity, String type, String name, int cost, int rubles, int points, String other,
+	public SPCard(int id, int edition, int quantity, String type, String name, int cost, int rubles, int points, String other,
 			String abbrev) {
+		this.id = id;
 		this.edition = edition;
 		this.quantity = quantity;
 		this.type = type;
@@ -34,12 +52,59 @@ public class SPCard {
 		this.points = points;
 		this.other = other;
 		this.abbrev = abbrev;
+		this.tradeValue = other.startsWith("trade cost ") ? Integer.parseInt(other.substring(11).trim()) : cost;
 
 		// Determine card type
 		isWorker = type.contains("worker");
 		isAristocrat = type.contains("aristocrat");
 		isBuilding = type.contains("building");
 		isTrading = type.contains("trading");
+
+		// Determine card effects
+		int effects = 0;
+		if (name.equals("Warehouse")) {
+			effects |= WAREHOUSE;
+		}
+		if (name.equals("Carpenter Workshop")) {
+			effects |= CARPENTER_WORKSHOP;
+		}
+		if (name.equals("Gold Smelter")) {
+			effects |= GOLD_SMELTER;
+		}
+		if (name.equals("Observatory")) {
+			effects |= OBSERVATORY;
+		}
+		if (name.equals("Pub")) {
+			effects |= PUB;
+		}
+		if (name.startsWith("Mariinskij")) {
+			effects |= MARIINSKIJ;
+		}
+		if (name.equals("Tax Man")) {
+			effects |= TAX_MAN;
+		}
+		if (name.endsWith("Village")) {
+			effects |= VILLAGE;
+		}
+		if (name.equals("Czar and Carpenter") || name.equals("Czar & Carpenter")) {
+			effects |= CZAR_AND_CARPENTER;
+		}
+		this.effects = effects;
+	}
+
+	// Whether the card has the given effect flag
+	public boolean hasEffect(int effect) {
+		return (effects & effect) != 0;
+	}
+
+	// Bitset of the ids of the cards this trading card may replace (0 for cards that are not trading cards)
+	public long getReplaceableCards() {
+		return REPLACEABLE_CARDS[id];
+	}
+
+	// Whether this trading card may replace the given card
+	public boolean canReplace(SPCard card) {
+		return (REPLACEABLE_CARDS[id] & 1L << card.id) != 0;
 	}
 
 	static {
@@ -69,7 +134,7 @@ public class SPCard {
 				String other = values[7].trim();
 				String abbrev = values[8].trim();
 
-				SPCard card = new SPCard(edition, quantity, type, name, cost, rubles, points, other, abbrev);
+				SPCard card = new SPCard(allCards.size(), edition, quantity, type, name, cost, rubles, points, other, abbrev);
 				allCards.add(card); // Add to all cards list
 
 				// Add card to the appropriate list based on its type
@@ -102,6 +167,30 @@ public class SPCard {
 		NUM_ARISTOCRAT_CARDS = ARISTOCRAT_CARDS.size();
 		NUM_TRADING_CARDS = TRADING_CARDS.size();
 		NUM_ALL_CARDS = ALL_CARDS.size();
+
+		// Compute which cards each trading card may replace: non-trading cards of the same type, where a worker trading
+		// card replaces only the worker named in its notes (e.g. "replaces Lumberjack") or the Czar and Carpenter
+		REPLACEABLE_CARDS = new long[NUM_ALL_CARDS];
+		for (SPCard card : TRADING_CARDS) {
+			String replacedWorkerType = null;
+			int notesIndex = card.other.indexOf("replaces ");
+			if (notesIndex >= 0) {
+				replacedWorkerType = card.other.substring(notesIndex + 9).trim();
+			}
+			for (SPCard c : ALL_CARDS) {
+				if (c.isTrading) {
+					continue; // cannot replace trading cards with trading cards
+				}
+				boolean sameType = card.isWorker ? c.isWorker : card.isBuilding ? c.isBuilding : c.isAristocrat;
+				if (!sameType) {
+					continue;
+				}
+				if (c.isWorker && !c.hasEffect(CZAR_AND_CARPENTER) && !c.name.equalsIgnoreCase(replacedWorkerType)) {
+					continue; // incompatible worker card
+				}
+				REPLACEABLE_CARDS[card.id] |= 1L << c.id;
+			}
+		}
 	} // static block
 
 	@Override
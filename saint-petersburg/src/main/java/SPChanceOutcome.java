@@ -0,0 +1,291 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
+
+/* SPChanceOutcome - One distinct outcome of a chance action with its exact probability: the card drawn by an observatory,
+ * or the multiset of cards drawn to refill the market.  SPAction.getChanceOutcomes() enumerates the outcomes of an
+ * action, SPAction.sampleChanceOutcome() samples one from the true distribution (into a reusable Sample in search code),
+ * and SPAction.take(state, outcome, undo) applies a chosen outcome deterministically.  Refill cards are placed in the upper row in card id order.
+ * Outcomes are equal when they draw the same cards from the same deck, so they can key chance node children.
+ */
+public final class SPChanceOutcome {
+
+	public final int deck; // The deck drawn from, or -1 if the action draws no cards
+	public final double probability; // The probability of the outcome
+	private final int[] cardIds; // Ids of the drawn cards in ascending order
+
+	private SPChanceOutcome(int deck, int[] cardIds, double probability) {
+		this.deck = deck;
+		this.cardIds = cardIds;
+		this.probability = probability;
+	}
+
+	// The outcome of an action that draws no cards
+	static final SPChanceOutcome NONE = new SPChanceOutcome(-1, new int[0], 1.0);
+
+	public int getNumCards() {
+		return cardIds.length;
+	}
+
+	// The drawn cards in card id order
+	public List<SPCard> getCards() {
+		List<SPCard> cards = new ArrayList<>(cardIds.length);
+		for (int id : cardIds) {
+			cards.add(SPCard.ALL_CARDS.get(id));
+		}
+		return cards;
+	}
+
+	// A draw policy that makes SPAction card draws produce exactly this outcome, drawing its cards in card id order
+	SPDrawPolicy drawPolicy() {
+		return new OutcomeDraws(this);
+	}
+
+	// The distinct outcomes of drawing numDraws cards from the deck of the state, in card id order
+	static List<SPChanceOutcome> enumerate(SPState state, int deck, int numDraws) {
+		List<SPChanceOutcome> outcomes = new ArrayList<>();
+		if (deck < 0 || numDraws == 0) {
+			outcomes.add(NONE);
+			return outcomes;
+		}
+		int[] counts = new int[SPCard.NUM_ALL_CARDS];
+		int size = countDeck(state, deck, counts);
+		enumerate(deck, counts, 0, new int[numDraws], 0, 1.0 / binomial(size, numDraws), outcomes);
+		return outcomes;
+	}
+
+	// Add the outcomes completing the first numChosen card ids with ids from firstId on, where weight is the product of
+	// the binomial coefficients of the choices so far divided by the number of ways to draw from the whole deck
+	private static void enumerate(int deck, int[] counts, int firstId, int[] chosen, int numChosen, double weight,
+			List<SPChanceOutcome> outcomes) {
+		if (numChosen == chosen.length) {
+			outcomes.add(new SPChanceOutcome(deck, chosen.clone(), weight));
+			return;
+		}
+		for (int id = firstId; id < counts.length; id++) {
+			int maxCopies = Math.min(counts[id], chosen.length - numChosen);
+			for (int copies = 1; copies <= maxCopies; copies++) {
+				chosen[numChosen + copies - 1] = id;
+				enumerate(deck, counts, id + 1, chosen, numChosen + copies, weight * binomial(counts[id], copies), outcomes);
+			}
+		}
+	}
+
+	// The number of distinct outcomes of drawing numDraws cards from the deck of the state, to check before enumerating
+	static long count(SPState state, int deck, int numDraws) {
+		if (deck < 0 || numDraws == 0) {
+			return 1;
+		}
+		// ways[k] = number of distinct multisets of k cards from the card ids considered so far
+		long[] ways = new long[numDraws + 1];
+		ways[0] = 1;
+		int[] counts = new int[SPCard.NUM_ALL_CARDS];
+		countDeck(state, deck, counts);
+		for (int count : counts) {
+			for (int k = numDraws; k > 0; k--) {
+				for (int copies = 1; copies <= Math.min(count, k); copies++) {
+					ways[k] += ways[k - copies];
+				}
+			}
+		}
+		return ways[numDraws];
+	}
+
+	// Count the cards of the deck of the state by card id into counts, of length SPCard.NUM_ALL_CARDS, returning the
+	// deck size.  Decks are kept as lists in random order; draws pick a uniformly random position, so these counts are
+	// all there is to know about a deck, and counting them into a buffer the caller reuses costs no allocation.
+	static int countDeck(SPState state, int deck, int[] counts) {
+		Arrays.fill(counts, 0);
+		List<SPCard> cards = state.getZone(deck);
+		for (int i = 0; i < cards.size(); i++) {
+			counts[cards.get(i).id]++;
+		}
+		return cards.size();
+	}
+
+	// Sample an outcome of drawing numDraws cards from the deck of the state
+	static SPChanceOutcome sample(SPState state, int deck, int numDraws, RandomGenerator random) {
+		Sample sample = new Sample();
+		sample.draw(state, deck, numDraws, random);
+		return sample.toOutcome();
+	}
+
+	// Multivariate hypergeometric probability of drawing the sorted card ids from a deck with the given counts
+	private static double probability(int[] counts, int size, int[] sortedIds) {
+		double probability = 1.0 / binomial(size, sortedIds.length);
+		for (int i = 0; i < sortedIds.length; ) {
+			int j = i;
+			while (j < sortedIds.length && sortedIds[j] == sortedIds[i]) {
+				j++;
+			}
+			probability *= binomial(counts[sortedIds[i]], j - i);
+			i = j;
+		}
+		return probability;
+	}
+
+	private static double binomial(int n, int k) {
+		double result = 1.0;
+		for (int i = 0; i < k; i++) {
+			result = result * (n - i) / (i + 1);
+		}
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof SPChanceOutcome)) {
+			return false;
+		}
+		SPChanceOutcome outcome = (SPChanceOutcome) other;
+		return deck == outcome.deck && Arrays.equals(cardIds, outcome.cardIds);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * deck + Arrays.hashCode(cardIds);
+	}
+
+	@Override
+	public String toString() {
+		List<String> names = new ArrayList<>();
+		for (SPCard card : getCards()) {
+			names.add(card.name);
+		}
+		return String.format("%s (p=%.4f)", names, probability);
+	}
+
+	// A sampled outcome held in scratch arrays that are reused from sample to sample, so that a search can sample an
+	// outcome and look it up among the outcomes it already has without allocating; toOutcome() makes the SPChanceOutcome
+	// only when one is needed, e.g. for a new chance node child.  Not thread-safe: one per search thread.
+	public static final class Sample {
+		private final int[] counts = new int[SPCard.NUM_ALL_CARDS]; // card counts of the deck sampled from
+		private int[] cardIds = new int[SPState.MARKET_SIZE]; // ids of the drawn cards in ascending order
+		private int numCards = 0;
+		private int deck = -1;
+		private int deckSize = 0;
+
+		// Sample an outcome of drawing numDraws cards from the deck of the state into this sample
+		void draw(SPState state, int deck, int numDraws, RandomGenerator random) {
+			this.deck = deck;
+			numCards = 0;
+			if (deck < 0 || numDraws == 0) {
+				this.deck = -1;
+				return;
+			}
+			if (numDraws > cardIds.length) {
+				cardIds = new int[numDraws];
+			}
+			deckSize = countDeck(state, deck, counts);
+			for (int i = 0; i < numDraws; i++) {
+				int pick = random.nextInt(deckSize - i);
+				int id = 0;
+				while (pick >= counts[id]) {
+					pick -= counts[id++];
+				}
+				counts[id]--;
+				// insertion sort by card id
+				int j = numCards++;
+				for (; j > 0 && cardIds[j - 1] > id; j--) {
+					cardIds[j] = cardIds[j - 1];
+				}
+				cardIds[j] = id;
+			}
+			for (int i = 0; i < numCards; i++) {
+				counts[cardIds[i]]++; // back to the counts of the whole deck
+			}
+		}
+
+		// Whether the outcome draws the sampled cards from the sampled deck, as equals() would tell of toOutcome()
+		boolean matches(SPChanceOutcome outcome) {
+			if (outcome.deck != deck || outcome.cardIds.length != numCards) {
+				return false;
+			}
+			for (int i = 0; i < numCards; i++) {
+				if (outcome.cardIds[i] != cardIds[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		// The sampled outcome with its probability
+		SPChanceOutcome toOutcome() {
+			if (deck < 0) {
+				return NONE;
+			}
+			int[] ids = Arrays.copyOf(cardIds, numCards);
+			return new SPChanceOutcome(deck, ids, probability(counts, deckSize, ids));
+		}
+	}
+
+	// Chooses the deck position of each card of an outcome in turn
+	private static final class OutcomeDraws implements SPDrawPolicy {
+		private final SPChanceOutcome outcome;
+		private int numDrawn = 0;
+
+		OutcomeDraws(SPChanceOutcome outcome) {
+			this.outcome = outcome;
+		}
+
+		@Override
+		public int drawIndex(List<SPCard> deck) {
+			if (numDrawn == outcome.cardIds.length) {
+				throw new IllegalStateException("More cards drawn than in the outcome " + outcome);
+			}
+			SPCard card = SPCard.ALL_CARDS.get(outcome.cardIds[numDrawn++]);
+			int index = deck.indexOf(card);
+			if (index < 0) {
+				throw new IllegalStateException(card.name + " is not in the deck for the outcome " + outcome);
+			}
+			return index;
+		}
+	}
+
+	public static void main(String[] args) {
+		// Check outcome enumeration: probabilities sum to 1, every outcome applies exactly, and samples are enumerated outcomes
+		java.util.Random random = new java.util.Random(0);
+		int numChecked = 0;
+		for (int game = 0; game < 100; game++) {
+			SPState state = new SPState();
+			while (!state.isGameOver()) {
+				ArrayList<SPAction> actions = state.getLegalActions();
+				for (SPAction action : actions) {
+					if (!action.isChanceAction() || action.getNumChanceOutcomes() > 2000) {
+						continue;
+					}
+					List<SPChanceOutcome> outcomes = action.getChanceOutcomes();
+					if (outcomes.size() != action.getNumChanceOutcomes()) {
+						throw new IllegalStateException("Outcome count mismatch for " + action);
+					}
+					double total = 0;
+					for (SPChanceOutcome outcome : outcomes) {
+						total += outcome.probability;
+						SPState copy = state.clone();
+						action.take(copy, outcome, null);
+						if (outcome.getNumCards() > 0) {
+							List<SPCard> drawn = action instanceof SPObserveDeckAction ? List.of(copy.observedCard)
+									: copy.upperCardRow.subList(copy.upperCardRow.size() - outcome.getNumCards(), copy.upperCardRow.size());
+							if (!drawn.equals(outcome.getCards())) {
+								throw new IllegalStateException("Applying " + outcome + " of " + action + " drew " + drawn);
+							}
+						}
+					}
+					if (Math.abs(total - 1.0) > 1e-9) {
+						throw new IllegalStateException("Outcome probabilities of " + action + " sum to " + total);
+					}
+					SPChanceOutcome sampled = action.sampleChanceOutcome(ThreadLocalRandom.current());
+					int index = outcomes.indexOf(sampled);
+					if (index < 0 || Math.abs(outcomes.get(index).probability - sampled.probability) > 1e-12) {
+						throw new IllegalStateException("Sampled outcome " + sampled + " of " + action + " not enumerated");
+					}
+					numChecked++;
+				}
+				actions.get(random.nextInt(actions.size())).take(random.nextLong());
+			}
+		}
+		System.out.println(numChecked + " chance actions: outcome probabilities sum to 1 and every outcome applies exactly.");
+	}
+}
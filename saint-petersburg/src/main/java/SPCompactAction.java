@@ -0,0 +1,113 @@
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
+
+/* SPCompactAction - A legal action of an SPCompactState: a packed SPMove code with the state it was generated for,
+ * decoded into card ordinals and zone indices for inspection and printing.  The rules themselves are in
+ * SPCompactState.applyMove(), which playouts call directly on packed moves without creating actions.
+ */
+public class SPCompactAction {
+
+	public static final int PASS = SPMove.PASS;
+	public static final int BUY = SPMove.BUY;
+	public static final int ADD_TO_HAND = SPMove.ADD_TO_HAND;
+	public static final int DISCARD = SPMove.DISCARD;
+	public static final int OBSERVE = SPMove.OBSERVE;
+	public static final int PUB_POINTS = SPMove.PUB_POINTS;
+	private static final int[] SOURCE_ZONE = {-1, SPCompactState.UPPER_ROW, SPCompactState.LOWER_ROW, -1}; // by SPMove source, the hand being per player
+
+	protected SPCompactState state; // a state for which this is a legal action
+	public final int move; // packed SPMove code
+	public final int kind; // one of the action kinds above
+	public final int player; // The player who is taking the action
+	public final int card; // card ordinal bought, added to hand, or discarded
+	public final int sourceZone; // zone the card is taken from, or -1 for the observed card
+	public final int replacedCard; // card ordinal replaced by a trading card, or NO_CARD
+	public final int cost; // rubles paid for a buy
+	public final int deck; // deck observed
+	public final int points; // points bought with pubs
+
+	SPCompactAction(SPCompactState state, int move) {
+		this.state = state;
+		this.move = move;
+		this.player = state.playerTurn;
+		this.kind = SPMove.kind(move);
+		boolean takesCard = kind == BUY || kind == ADD_TO_HAND || kind == DISCARD;
+		this.card = takesCard ? state.moveCard(move) : SPCompactState.NO_CARD;
+		int source = SPMove.source(move);
+		this.sourceZone = !takesCard || kind == DISCARD || source == SPMove.OBSERVED ? -1
+				: source == SPMove.HAND ? SPCompactState.playerZone(player, SPCompactState.HAND) : SOURCE_ZONE[source];
+		this.replacedCard = SPMove.replacedId(move);
+		this.cost = SPMove.cost(move);
+		this.deck = kind == OBSERVE ? SPMove.index(move) : -1;
+		this.points = kind == PUB_POINTS ? SPMove.index(move) : 0;
+	}
+
+	// Take the action on the state for which it is legal, returning the resulting state.
+	public SPCompactState take() {
+		return take(state);
+	}
+
+	// Take the action on the given state, returning the resulting state.
+	public SPCompactState take(SPCompactState state) {
+		return take(state, ThreadLocalRandom.current());
+	}
+
+	// Take the action given a random generator seed, drawing the same cards as SPAction.take(seed)
+	public SPCompactState take(long seed) {
+		return take(state, SPAction.seededCardRandom(seed));
+	}
+
+	// Take the action on the state for which it is legal,
+	// either on a clone of the state or on the state itself depending on the onClone parameter.
+	public SPCompactState take(boolean onClone) {
+		return take(onClone ? state.clone() : state);
+	}
+
+	// Take the action on the given state, drawing any random cards from the given generator
+	public SPCompactState take(SPCompactState state, RandomGenerator random) {
+		state.applyMove(move, random);
+		return state;
+	}
+
+	// Check if this action leads to a chance event
+	public boolean isChanceAction() {
+		return state.isChanceMove(move);
+	}
+
+	@Override
+	public String toString() {
+		int playerNumber = player + 1;
+		switch (kind) {
+			case PASS:
+				return String.format("Player %d passes.", playerNumber);
+			case BUY:
+				String replacing = replacedCard == SPCompactState.NO_CARD ? "" : String.format(" replacing %s", SPCompactState.card(replacedCard).name);
+				return String.format("Player %d buys %s from %s for %d ruble%s%s.", playerNumber, SPCompactState.card(card).name,
+						sourceName(), cost, cost > 1 ? "s" : "", replacing);
+			case ADD_TO_HAND:
+				return String.format("Player %d adds %s to their hand from %s.", playerNumber, SPCompactState.card(card).name, sourceName());
+			case DISCARD:
+				return String.format("Player %d discards the observed %s card.", playerNumber, SPCompactState.card(card).name);
+			case OBSERVE:
+				String[] deckNames = {"worker deck", "building deck", "aristocrat deck", "trading deck"};
+				return String.format("Player %d observes %s.", playerNumber, deckNames[deck]);
+			default:
+				return points == 0
+					? String.format("Player %d opts not to use the pub.", playerNumber)
+					: String.format("Player %d buys %d point%s for %d ruble%s with the Pub.", playerNumber, points, points > 1 ? "s" : "", 2 * points, 2 * points > 1 ? "s" : "");
+		}
+	}
+
+	private String sourceName() {
+		switch (sourceZone) {
+			case -1:
+				return "observation";
+			case SPCompactState.UPPER_ROW:
+				return "the upper card row";
+			case SPCompactState.LOWER_ROW:
+				return "the lower card row";
+			default:
+				return "their hand";
+		}
+	}
+}
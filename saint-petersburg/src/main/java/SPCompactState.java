@@ -0,0 +1,847 @@
+/* SPCompactState - A compact, array-backed representation of a Saint Petersburg game state.
+ * Cards are byte ordinals into SPCard.ALL_CARDS and every zone (deck, row, discard pile, hand, holding) is a fixed-capacity
+ * slice of a single byte array with its length kept in a parallel array, so clone() and copyFrom() are a handful of array
+ * copies.  Moves are generated as packed SPMove codes in the same order as SPState.generateMoves() and follow the same
+ * rules, so a move index chosen on a compact state is the index of the same action on the corresponding SPState.
+ * generateMoves() and applyMove() allocate nothing; players use a reusable compact state for random playouts that run to
+ * the end of the game, e.g. the decisions-remaining estimates of time management (estimateDecisionsRemaining()).
+ * The per-phase and per-round statistics of SPState are not kept, so heuristic features are evaluated on SPStates.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.random.RandomGenerator;
+
+public class SPCompactState implements Cloneable {
+
+	public static final int MAX_PLAYERS = 4; // Zones are laid out for the maximum number of players
+	public static final int NO_CARD = -1; // Ordinal used for "no card"
+
+	// Shared zone indices (decks use the SPState phase constants WORKER..TRADING)
+	public static final int UPPER_ROW = 4;
+	public static final int LOWER_ROW = 5;
+	public static final int DISCARD = 6;
+	// Per-player zone offsets, see playerZone(player, offset)
+	public static final int HAND = 0;
+	public static final int WORKERS = 1;
+	public static final int BUILDINGS = 2;
+	public static final int ARISTOCRATS = 3;
+	public static final int NUM_PLAYER_ZONES = 4;
+	public static final int FIRST_PLAYER_ZONE = 7;
+	public static final int NUM_ZONES = FIRST_PLAYER_ZONE + MAX_PLAYERS * NUM_PLAYER_ZONES;
+	public static final int MAX_HAND_SIZE = 4; // 3 cards, plus 1 with a Warehouse
+
+	// Card property tables indexed by ordinal
+	static final int NUM_CARDS = SPCard.NUM_ALL_CARDS;
+	static final SPCard[] CARDS = SPCard.ALL_CARDS.toArray(new SPCard[0]);
+	static final int[] COST = new int[NUM_CARDS];
+	static final int[] RUBLES = new int[NUM_CARDS];
+	static final int[] POINTS = new int[NUM_CARDS];
+	static final int[] HOLDING = new int[NUM_CARDS]; // player zone offset a bought card is added to
+	static final boolean[] IS_TRADING = new boolean[NUM_CARDS];
+	static final int[] TRADE_VALUE = new int[NUM_CARDS]; // value credited when a card is replaced by a trading card
+	static final long[] REPLACEABLE = new long[NUM_CARDS]; // bitset of ordinals a trading card may replace
+	// Effect cards as the rules look them up: among the buildings, or the aristocrats for the Tax Man.  A card held
+	//   elsewhere is NO_CARD, since SPState never finds it there (the Carpenter Workshop and Gold Smelter are trading workers).
+	static final int WAREHOUSE, CARPENTER_WORKSHOP, GOLD_SMELTER, OBSERVATORY, PUB, TAX_MAN;
+	static final boolean[] IS_MARIINSKIJ = new boolean[NUM_CARDS];
+	static final int[] MARIINSKIJ_ORDINALS; // ordinals of the Mariinskij Theater cards
+	static final int[] ARISTOCRAT_ORDINALS; // ordinals of the aristocrat cards, for unique aristocrat bonuses
+
+	// Zone layout within the cards array
+	static final int[] ZONE_START = new int[NUM_ZONES];
+	static final int[] ZONE_CAPACITY = new int[NUM_ZONES];
+	static final int CARDS_LENGTH;
+
+	public int numPlayers;
+	public int round = 1;
+	public int phase = SPState.WORKER;
+	public int playerTurn = 0;
+	public int observedCard = NO_CARD;
+	public byte[] cards; // all zones, each zone z occupying cards[ZONE_START[z] .. ZONE_START[z] + zoneSize[z])
+	public int[] zoneSize = new int[NUM_ZONES];
+	public int[] playerRubles;
+	public int[] playerPoints;
+	public boolean[] playerPassed;
+	public int[] startingPlayer = new int[SPState.NUM_DECKS];
+	public int[] usedObservatories;
+	public boolean[] isWinner;
+	public int[] holdingCounts; // [player * NUM_CARDS + ordinal], copies of each card among the player's holdings
+
+	// Source zones of SPMove sources other than the hand, which is per player, and the observed card
+	private static final int[] ZONE_OF_SOURCE = {-1, UPPER_ROW, LOWER_ROW, -1};
+	private static final ThreadLocal<int[]> MOVE_BUFFER = ThreadLocal.withInitial(() -> new int[SPState.MAX_LEGAL_ACTIONS]);
+
+	static {
+		int warehouse = NO_CARD, carpenterWorkshop = NO_CARD, goldSmelter = NO_CARD, observatory = NO_CARD;
+		int pub = NO_CARD, taxMan = NO_CARD;
+		int[] deckCapacity = new int[SPState.NUM_DECKS];
+		int[] holdingCapacity = new int[NUM_PLAYER_ZONES];
+		int totalCards = 0;
+		int[] mariinskij = new int[NUM_CARDS];
+		int[] aristocrats = new int[NUM_CARDS];
+		int numMariinskij = 0, numAristocrats = 0;
+		for (int i = 0; i < NUM_CARDS; i++) {
+			SPCard card = CARDS[i];
+			COST[i] = card.cost;
+			RUBLES[i] = card.rubles;
+			POINTS[i] = card.points;
+			IS_TRADING[i] = card.isTrading;
+			HOLDING[i] = card.isWorker ? WORKERS : card.isBuilding ? BUILDINGS : ARISTOCRATS;
+			IS_MARIINSKIJ[i] = card.name.startsWith("Mariinskij");
+			if (IS_MARIINSKIJ[i]) {
+				mariinskij[numMariinskij++] = i;
+			}
+			if (HOLDING[i] == ARISTOCRATS) {
+				aristocrats[numAristocrats++] = i;
+			}
+			TRADE_VALUE[i] = card.tradeValue;
+			REPLACEABLE[i] = card.getReplaceableCards(); // ordinals are card ids
+			switch (card.name) {
+				case "Warehouse": warehouse = i; break;
+				case "Carpenter Workshop": carpenterWorkshop = i; break;
+				case "Gold Smelter": goldSmelter = i; break;
+				case "Observatory": observatory = i; break;
+				case "Pub": pub = i; break;
+				case "Tax Man": taxMan = i; break;
+			}
+			int deck = card.isTrading ? SPState.TRADING : card.isWorker ? SPState.WORKER
+					: card.isBuilding ? SPState.BUILDING : SPState.ARISTOCRAT;
+			deckCapacity[deck] += card.quantity;
+			holdingCapacity[HOLDING[i]] += card.quantity;
+			totalCards += card.quantity;
+		}
+		WAREHOUSE = heldIn(warehouse, BUILDINGS);
+		CARPENTER_WORKSHOP = heldIn(carpenterWorkshop, BUILDINGS);
+		GOLD_SMELTER = heldIn(goldSmelter, BUILDINGS);
+		OBSERVATORY = heldIn(observatory, BUILDINGS);
+		PUB = heldIn(pub, BUILDINGS);
+		TAX_MAN = heldIn(taxMan, ARISTOCRATS);
+		MARIINSKIJ_ORDINALS = Arrays.copyOf(mariinskij, numMariinskij);
+		ARISTOCRAT_ORDINALS = Arrays.copyOf(aristocrats, numAristocrats);
+
+		// Lay out the zones
+		for (int deck = 0; deck < SPState.NUM_DECKS; deck++) {
+			ZONE_CAPACITY[deck] = deckCapacity[deck];
+		}
+		ZONE_CAPACITY[UPPER_ROW] = SPState.MARKET_SIZE;
+		ZONE_CAPACITY[LOWER_ROW] = SPState.MARKET_SIZE;
+		ZONE_CAPACITY[DISCARD] = totalCards;
+		for (int player = 0; player < MAX_PLAYERS; player++) {
+			ZONE_CAPACITY[playerZone(player, HAND)] = MAX_HAND_SIZE;
+			for (int holding = WORKERS; holding <= ARISTOCRATS; holding++) {
+				ZONE_CAPACITY[playerZone(player, holding)] = holdingCapacity[holding];
+			}
+		}
+		int start = 0;
+		for (int zone = 0; zone < NUM_ZONES; zone++) {
+			ZONE_START[zone] = start;
+			start += ZONE_CAPACITY[zone];
+		}
+		CARDS_LENGTH = start;
+	}
+
+	// Construct a compact copy of the given state
+	public SPCompactState(SPState state) {
+		cards = new byte[CARDS_LENGTH];
+		copyFrom(state);
+	}
+
+	// Construct a compact copy of a new, randomly dealt game
+	public SPCompactState(int numPlayers) {
+		this(new SPState(numPlayers));
+	}
+
+	// Overwrite this state in place with a compact copy of the given state.  The per-player arrays are reallocated only
+	// when the number of players changes, so that one scratch compact state can be reused for many playouts.
+	public SPCompactState copyFrom(SPState state) {
+		if (playerRubles == null || playerRubles.length != state.numPlayers) {
+			playerRubles = new int[state.numPlayers];
+			playerPoints = new int[state.numPlayers];
+			playerPassed = new boolean[state.numPlayers];
+			usedObservatories = new int[state.numPlayers];
+			isWinner = new boolean[state.numPlayers];
+			holdingCounts = new int[state.numPlayers * NUM_CARDS];
+		}
+		numPlayers = state.numPlayers;
+		round = state.round;
+		phase = state.phase;
+		playerTurn = state.playerTurn;
+		observedCard = ordinal(state.observedCard);
+		setZone(SPState.WORKER, state.workerDeck);
+		setZone(SPState.BUILDING, state.buildingDeck);
+		setZone(SPState.ARISTOCRAT, state.aristocratDeck);
+		setZone(SPState.TRADING, state.tradingDeck);
+		setZone(UPPER_ROW, state.upperCardRow);
+		setZone(LOWER_ROW, state.lowerCardRow);
+		setZone(DISCARD, state.discardPile);
+		for (int player = 0; player < numPlayers; player++) {
+			setZone(playerZone(player, HAND), state.playerHands.get(player));
+			setZone(playerZone(player, WORKERS), state.playerWorkers.get(player));
+			setZone(playerZone(player, BUILDINGS), state.playerBuildings.get(player));
+			setZone(playerZone(player, ARISTOCRATS), state.playerAristocrats.get(player));
+			System.arraycopy(state.playerCardCounts[player], 0, holdingCounts, player * NUM_CARDS, NUM_CARDS);
+		}
+		System.arraycopy(state.playerRubles, 0, playerRubles, 0, numPlayers);
+		System.arraycopy(state.playerPoints, 0, playerPoints, 0, numPlayers);
+		System.arraycopy(state.playerPassed, 0, playerPassed, 0, numPlayers);
+		System.arraycopy(state.usedObservatories, 0, usedObservatories, 0, numPlayers);
+		System.arraycopy(state.isWinner, 0, isWinner, 0, numPlayers);
+		System.arraycopy(state.startingPlayer, 0, startingPlayer, 0, SPState.NUM_DECKS);
+		return this;
+	}
+
+	public static int playerZone(int player, int offset) {
+		return FIRST_PLAYER_ZONE + player * NUM_PLAYER_ZONES + offset;
+	}
+
+	// Return the ordinal of the given card in SPCard.ALL_CARDS, which is its id, or NO_CARD for null
+	public static int ordinal(SPCard card) {
+		return card == null ? NO_CARD : card.id;
+	}
+
+	// The ordinal if the card is bought into the given holding, else NO_CARD
+	private static int heldIn(int ordinal, int holding) {
+		return ordinal != NO_CARD && HOLDING[ordinal] == holding ? ordinal : NO_CARD;
+	}
+
+	// Return the card with the given ordinal, or null for NO_CARD
+	public static SPCard card(int ordinal) {
+		return ordinal == NO_CARD ? null : CARDS[ordinal];
+	}
+
+	private void setZone(int zone, List<SPCard> zoneCards) {
+		if (zoneCards.size() > ZONE_CAPACITY[zone]) {
+			throw new IllegalArgumentException("Too many cards for zone " + zone + ": " + zoneCards.size());
+		}
+		for (int i = 0; i < zoneCards.size(); i++) {
+			cards[ZONE_START[zone] + i] = (byte) zoneCards.get(i).id;
+		}
+		zoneSize[zone] = zoneCards.size();
+	}
+
+	private void getZone(int zone, List<SPCard> zoneCards) {
+		zoneCards.clear();
+		for (int i = 0; i < zoneSize[zone]; i++) {
+			zoneCards.add(CARDS[cards[ZONE_START[zone] + i]]);
+		}
+	}
+
+	// Return a full SPState equal to this state, e.g. for heuristic evaluation with SPState-based features
+	public SPState toSPState() {
+		SPState state = new SPState(numPlayers, false);
+		state.round = round;
+		state.phase = phase;
+		state.playerTurn = playerTurn;
+		state.observedCard = card(observedCard);
+		getZone(SPState.WORKER, state.workerDeck);
+		getZone(SPState.BUILDING, state.buildingDeck);
+		getZone(SPState.ARISTOCRAT, state.aristocratDeck);
+		getZone(SPState.TRADING, state.tradingDeck);
+		getZone(UPPER_ROW, state.upperCardRow);
+		getZone(LOWER_ROW, state.lowerCardRow);
+		getZone(DISCARD, state.discardPile);
+		for (int player = 0; player < numPlayers; player++) {
+			getZone(playerZone(player, HAND), state.playerHands.get(player));
+			getZone(playerZone(player, WORKERS), state.playerWorkers.get(player));
+			getZone(playerZone(player, BUILDINGS), state.playerBuildings.get(player));
+			getZone(playerZone(player, ARISTOCRATS), state.playerAristocrats.get(player));
+		}
+		state.playerRubles = playerRubles.clone();
+		state.playerPoints = playerPoints.clone();
+		state.playerPassed = playerPassed.clone();
+		state.usedObservatories = usedObservatories.clone();
+		state.isWinner = isWinner.clone();
+		state.startingPlayer = startingPlayer.clone();
+		state.recomputeAggregates();
+		return state;
+	}
+
+	public boolean isGameOver() {
+		return phase == SPState.END;
+	}
+
+	public int size(int zone) {
+		return zoneSize[zone];
+	}
+
+	public int get(int zone, int index) {
+		return cards[ZONE_START[zone] + index];
+	}
+
+	// Count the cards with the given ordinal in a zone
+	public int count(int zone, int ordinal) {
+		int count = 0;
+		for (int i = ZONE_START[zone], end = i + zoneSize[zone]; i < end; i++) {
+			if (cards[i] == ordinal) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	void add(int zone, int ordinal) {
+		if (zoneSize[zone] == ZONE_CAPACITY[zone]) {
+			throw new IllegalStateException("Zone " + zone + " is full.");
+		}
+		cards[ZONE_START[zone] + zoneSize[zone]++] = (byte) ordinal;
+	}
+
+	// Remove the first card with the given ordinal from the zone, keeping the order of the rest (as ArrayList.remove does)
+	boolean remove(int zone, int ordinal) {
+		int start = ZONE_START[zone];
+		int end = start + zoneSize[zone];
+		for (int i = start; i < end; i++) {
+			if (cards[i] == ordinal) {
+				System.arraycopy(cards, i + 1, cards, i, end - i - 1);
+				zoneSize[zone]--;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// Draw a random card from a deck as SPAction.drawRandomCard does, moving the last card into the drawn card's place
+	int draw(int deck, RandomGenerator random) {
+		int size = zoneSize[deck];
+		if (size == 0) {
+			return NO_CARD; // No cards to draw
+		}
+		int start = ZONE_START[deck];
+		int index = random.nextInt(size);
+		int card = cards[start + index];
+		cards[start + index] = cards[start + size - 1];
+		zoneSize[deck]--;
+		return card;
+	}
+
+	// Refill the upper row from a deck, placing the drawn cards in card id order as SPAction.refillTopRow does
+	void refillTopRow(int deck, RandomGenerator random) {
+		int numCardsToDraw = SPState.MARKET_SIZE - zoneSize[UPPER_ROW] - zoneSize[LOWER_ROW];
+		int firstDrawn = ZONE_START[UPPER_ROW] + zoneSize[UPPER_ROW];
+		for (int i = 0; i < numCardsToDraw && zoneSize[deck] > 0; i++) {
+			add(UPPER_ROW, draw(deck, random));
+			for (int j = ZONE_START[UPPER_ROW] + zoneSize[UPPER_ROW] - 1; j > firstDrawn && cards[j - 1] > cards[j]; j--) {
+				byte card = cards[j]; // insertion sort by card ordinal, which is the card id
+				cards[j] = cards[j - 1];
+				cards[j - 1] = card;
+			}
+		}
+	}
+
+	// The number of copies of the card among the player's holdings, 0 for NO_CARD
+	int holding(int player, int ordinal) {
+		return ordinal == NO_CARD ? 0 : holdingCounts[player * NUM_CARDS + ordinal];
+	}
+
+	// Return the card cost for the given player before any trading replacement credit
+	int getCost(int player, int ordinal, boolean fromLowerRow) {
+		int cost = COST[ordinal];
+		if (fromLowerRow) {
+			cost--; // Lower row cards cost 1 less
+		}
+		int holding = HOLDING[ordinal];
+		if (holding == BUILDINGS && holding(player, CARPENTER_WORKSHOP) > 0) {
+			cost--; // Building costs are reduced by 1 with the Carpenter Workshop
+		}
+		if (holding == ARISTOCRATS && holding(player, GOLD_SMELTER) > 0) {
+			cost--; // Aristocrat costs are reduced by 1 with the Gold Smelter
+		}
+		return cost - holding(player, ordinal); // 1 less for each same card already owned
+	}
+
+	// The zone a move takes its card from, the current player's hand for SPMove.HAND, or -1 for the observed card
+	private int sourceZone(int source) {
+		return source == SPMove.HAND ? playerZone(playerTurn, HAND) : ZONE_OF_SOURCE[source];
+	}
+
+	// Write the legal moves as packed SPMove codes into the buffer, which must hold SPState.MAX_LEGAL_ACTIONS moves, in the
+	// order of SPState.generateMoves(), and return their number
+	public int generateMoves(int[] moves) {
+		if (isGameOver()) {
+			return 0; // No actions allowed in the end phase
+		}
+		int numMoves = 0;
+		int rubles = playerRubles[playerTurn];
+		int hand = playerZone(playerTurn, HAND);
+		boolean hasRoomInHand = (holding(playerTurn, WAREHOUSE) > 0 ? 4 : 3) - zoneSize[hand] > 0;
+		int numUnusedObservatories = 0;
+		if (phase == SPState.BUILDING) {
+			numUnusedObservatories = holding(playerTurn, OBSERVATORY) - usedObservatories[playerTurn];
+		}
+
+		if (observedCard != NO_CARD) {
+			moves[numMoves++] = SPMove.pack(SPMove.DISCARD, 0, 0, NO_CARD, 0);
+			if (hasRoomInHand) {
+				moves[numMoves++] = SPMove.pack(SPMove.ADD_TO_HAND, SPMove.OBSERVED, 0, NO_CARD, 0);
+			}
+			if (rubles > 1) { // as in SPState, buying an observed card requires at least 2 rubles
+				numMoves = addBuyMoves(moves, numMoves, observedCard, SPMove.OBSERVED, 0, numUnusedObservatories);
+			}
+		}
+		else if (phase == SPState.PUB_ACTION) {
+			int maxPoints = holding(playerTurn, PUB) * 5; // Each Pub can purchase up to 5 points at 2 rubles/point
+			for (int points = 0; points <= maxPoints && 2 * points <= rubles; points++) {
+				moves[numMoves++] = SPMove.pack(SPMove.PUB_POINTS, 0, points, NO_CARD, 0);
+			}
+		}
+		else {
+			moves[numMoves++] = SPMove.pack(SPMove.PASS, 0, 0, NO_CARD, 0);
+			if (rubles > 0) {
+				for (int source = SPMove.HAND; source <= SPMove.LOWER_ROW; source++) {
+					int zone = sourceZone(source);
+					for (int i = 0; i < zoneSize[zone]; i++) {
+						numMoves = addBuyMoves(moves, numMoves, get(zone, i), source, i, numUnusedObservatories);
+					}
+				}
+			}
+			if (numUnusedObservatories > 0) {
+				for (int deck = 0; deck < SPState.NUM_DECKS; deck++) {
+					if (zoneSize[deck] > 1) {
+						moves[numMoves++] = SPMove.pack(SPMove.OBSERVE, 0, deck, NO_CARD, 0);
+					}
+				}
+			}
+			if (hasRoomInHand) {
+				for (int source = SPMove.UPPER_ROW; source <= SPMove.LOWER_ROW; source++) {
+					for (int i = 0; i < zoneSize[ZONE_OF_SOURCE[source]]; i++) {
+						moves[numMoves++] = SPMove.pack(SPMove.ADD_TO_HAND, source, i, NO_CARD, 0);
+					}
+				}
+			}
+		}
+		return numMoves;
+	}
+
+	// Add the buy move(s) for the card at the index of the source to the moves, returning the new number of moves
+	private int addBuyMoves(int[] moves, int numMoves, int ordinal, int source, int index, int numUnusedObservatories) {
+		int rubles = playerRubles[playerTurn];
+		int cost = getCost(playerTurn, ordinal, source == SPMove.LOWER_ROW);
+		if (!IS_TRADING[ordinal]) {
+			cost = Math.max(cost, 1);
+			if (rubles >= cost) {
+				moves[numMoves++] = SPMove.pack(SPMove.BUY, source, index, NO_CARD, cost);
+			}
+			return numMoves;
+		}
+		// Trading card: one buy move per distinct replaceable card, in order of first occurrence
+		long offeredCards = 0L;
+		int destination = playerZone(playerTurn, HOLDING[ordinal]);
+		for (int i = ZONE_START[destination], end = i + zoneSize[destination]; i < end; i++) {
+			int replaced = cards[i];
+			if ((REPLACEABLE[ordinal] & 1L << replaced) == 0 || (offeredCards & 1L << replaced) != 0) {
+				continue; // trading card or incompatible worker card, or already offered
+			}
+			if (replaced == OBSERVATORY && numUnusedObservatories < 1) {
+				continue; // Cannot replace an Observatory if none are left unused
+			}
+			int replaceCost = Math.max(cost - TRADE_VALUE[replaced], 1);
+			if (rubles >= replaceCost) {
+				offeredCards |= 1L << replaced;
+				moves[numMoves++] = SPMove.pack(SPMove.BUY, source, index, replaced, replaceCost);
+			}
+		}
+		return numMoves;
+	}
+
+	// The legal actions in the order of SPState.getLegalActions(), for code that wants action objects
+	public ArrayList<SPCompactAction> getLegalActions() {
+		int[] moves = MOVE_BUFFER.get();
+		int numMoves = generateMoves(moves);
+		ArrayList<SPCompactAction> legalActions = new ArrayList<>(numMoves);
+		for (int i = 0; i < numMoves; i++) {
+			legalActions.add(new SPCompactAction(this, moves[i]));
+		}
+		return legalActions;
+	}
+
+	// The card a buy, add-to-hand or discard move takes, from the state the move was generated for
+	int moveCard(int move) {
+		int source = SPMove.source(move);
+		if (SPMove.kind(move) == SPMove.DISCARD || source == SPMove.OBSERVED) {
+			return observedCard;
+		}
+		return get(sourceZone(source), SPMove.index(move));
+	}
+
+	// Apply a move generated for this state, following SPPassAction, SPBuyAction, SPAddToHandAction, SPDiscardAction,
+	// SPObserveDeckAction and SPPubPointsAction, and drawing any cards with the given random generator
+	public void applyMove(int move, RandomGenerator random) {
+		int player = playerTurn;
+		switch (SPMove.kind(move)) {
+			case SPMove.PASS:
+				pass(random);
+				break;
+			case SPMove.BUY: {
+				playerPassed[player] = false;
+				playerRubles[player] -= SPMove.cost(move);
+				int ordinal = moveCard(move);
+				int destination = playerZone(player, HOLDING[ordinal]);
+				int replaced = SPMove.replacedId(move);
+				if (replaced != NO_CARD) {
+					if (!remove(destination, replaced)) {
+						throw new IllegalStateException("Replaced card not found in the destination: " + CARDS[replaced].name);
+					}
+					holdingCounts[player * NUM_CARDS + replaced]--;
+				}
+				if (SPMove.source(move) == SPMove.OBSERVED) {
+					observedCard = NO_CARD;
+				}
+				else {
+					remove(sourceZone(SPMove.source(move)), ordinal); // the first copy, as ArrayList.remove(Object) in SPBuyAction
+				}
+				add(destination, ordinal);
+				holdingCounts[player * NUM_CARDS + ordinal]++;
+				playerTurn = (player + 1) % numPlayers;
+				break;
+			}
+			case SPMove.ADD_TO_HAND: {
+				playerPassed[player] = false;
+				int ordinal = moveCard(move);
+				if (SPMove.source(move) == SPMove.OBSERVED) {
+					observedCard = NO_CARD;
+				}
+				else {
+					remove(sourceZone(SPMove.source(move)), ordinal);
+				}
+				add(playerZone(player, HAND), ordinal);
+				playerTurn = (player + 1) % numPlayers;
+				break;
+			}
+			case SPMove.DISCARD:
+				add(DISCARD, observedCard);
+				observedCard = NO_CARD;
+				playerTurn = (player + 1) % numPlayers;
+				break;
+			case SPMove.OBSERVE:
+				playerPassed[player] = false;
+				observedCard = draw(SPMove.index(move), random);
+				usedObservatories[player]++;
+				break;
+			case SPMove.PUB_POINTS: {
+				int points = SPMove.index(move);
+				playerPoints[player] += points;
+				playerRubles[player] -= 2 * points;
+				int nextPubPlayer = nextPubPlayer();
+				if (nextPubPlayer >= 0) {
+					playerTurn = nextPubPlayer;
+				}
+				else {
+					startAristocratPhase(random);
+				}
+				break;
+			}
+		}
+	}
+
+	// Return the next player after the current one in building phase order with a Pub, or -1 if there is none
+	private int nextPubPlayer() {
+		int buildingStartPlayer = startingPlayer[SPState.BUILDING];
+		int playerOffset = (playerTurn + numPlayers - buildingStartPlayer) % numPlayers;
+		for (int offset = playerOffset + 1; offset < numPlayers; offset++) {
+			int possibleNextPubPlayer = (buildingStartPlayer + offset) % numPlayers;
+			if (holding(possibleNextPubPlayer, PUB) > 0) {
+				return possibleNextPubPlayer;
+			}
+		}
+		return -1;
+	}
+
+	private void startAristocratPhase(RandomGenerator random) {
+		Arrays.fill(usedObservatories, 0); // Reset observatory usage for next round
+		startPhase(SPState.ARISTOCRAT, random);
+	}
+
+	private void startPhase(int newPhase, RandomGenerator random) {
+		phase = newPhase;
+		refillTopRow(newPhase, random);
+		playerTurn = startingPlayer[newPhase];
+	}
+
+	// Gain the rubles and points of the given holding for each player
+	private void scoreHolding(int holding) {
+		for (int player = 0; player < numPlayers; player++) {
+			int zone = playerZone(player, holding);
+			for (int i = ZONE_START[zone], end = i + zoneSize[zone]; i < end; i++) {
+				playerRubles[player] += RUBLES[cards[i]];
+				playerPoints[player] += POINTS[cards[i]];
+			}
+		}
+	}
+
+	private void pass(RandomGenerator random) {
+		playerPassed[playerTurn] = true;
+		for (boolean passed : playerPassed) {
+			if (!passed) {
+				playerTurn = (playerTurn + 1) % numPlayers; // Not all players passed, continue current phase
+				return;
+			}
+		}
+		Arrays.fill(playerPassed, false);
+		if (phase == SPState.WORKER) {
+			scoreHolding(WORKERS);
+			startPhase(SPState.BUILDING, random);
+		}
+		else if (phase == SPState.BUILDING) {
+			scoreHolding(BUILDINGS);
+			boolean pubActionNext = false;
+			for (int player = 0; player < numPlayers; player++) {
+				int numAristocrats = zoneSize[playerZone(player, ARISTOCRATS)];
+				for (int ordinal : MARIINSKIJ_ORDINALS) {
+					playerPoints[player] += holding(player, ordinal) * numAristocrats;
+				}
+				pubActionNext |= holding(player, PUB) > 0;
+				// Give a point for each observatory that has not been used this round.
+				playerPoints[player] += holding(player, OBSERVATORY) - usedObservatories[player];
+				usedObservatories[player] = 0;
+			}
+			if (pubActionNext) {
+				phase = SPState.PUB_ACTION;
+				int buildingStartPlayer = startingPlayer[SPState.BUILDING];
+				for (int i = 0; i < numPlayers; i++) {
+					int player = (buildingStartPlayer + i) % numPlayers;
+					if (holding(player, PUB) > 0) {
+						playerTurn = player;
+						break;
+					}
+				}
+			}
+			else {
+				startAristocratPhase(random);
+			}
+		}
+		else if (phase == SPState.ARISTOCRAT) {
+			scoreHolding(ARISTOCRATS);
+			for (int player = 0; player < numPlayers; player++) {
+				playerRubles[player] += holding(player, TAX_MAN) * zoneSize[playerZone(player, WORKERS)];
+			}
+			startPhase(SPState.TRADING, random);
+		}
+		else if (phase == SPState.TRADING) {
+			round++;
+			for (int deck = 0; deck < SPState.NUM_DECKS; deck++) {
+				if (zoneSize[deck] == 0) {
+					endGame();
+					return;
+				}
+			}
+			// Discard the lower row, move the upper row down, and refill the upper row with workers
+			for (int i = 0; i < zoneSize[LOWER_ROW]; i++) {
+				add(DISCARD, get(LOWER_ROW, i));
+			}
+			System.arraycopy(cards, ZONE_START[UPPER_ROW], cards, ZONE_START[LOWER_ROW], zoneSize[UPPER_ROW]);
+			zoneSize[LOWER_ROW] = zoneSize[UPPER_ROW];
+			zoneSize[UPPER_ROW] = 0;
+			for (int deck = 0; deck < SPState.NUM_DECKS; deck++) {
+				startingPlayer[deck] = (startingPlayer[deck] + 1) % numPlayers;
+			}
+			startPhase(SPState.WORKER, random);
+		}
+	}
+
+	private void endGame() {
+		phase = SPState.END;
+		int maxPoints = Integer.MIN_VALUE;
+		for (int player = 0; player < numPlayers; player++) {
+			// Score unique aristocrats, remaining rubles at 1 point per 10 rubles, and -5 points per card in hand
+			int numUniqueAristocrats = 0;
+			for (int ordinal : ARISTOCRAT_ORDINALS) {
+				if (holding(player, ordinal) > 0) {
+					numUniqueAristocrats++;
+				}
+			}
+			playerPoints[player] += SPState.uniqueAristocratBonus(numUniqueAristocrats);
+			playerPoints[player] += playerRubles[player] / SPState.RUBLES_PER_FINAL_POINT;
+			playerPoints[player] -= SPState.HAND_CARD_PENALTY * zoneSize[playerZone(player, HAND)];
+			maxPoints = Math.max(maxPoints, playerPoints[player]);
+		}
+		int maxRubles = Integer.MIN_VALUE;
+		for (int player = 0; player < numPlayers; player++) {
+			if (playerPoints[player] == maxPoints) {
+				maxRubles = Math.max(maxRubles, playerRubles[player]);
+			}
+		}
+		for (int player = 0; player < numPlayers; player++) {
+			isWinner[player] = playerPoints[player] == maxPoints && playerRubles[player] == maxRubles;
+		}
+	}
+
+	// Check if the move leads to a chance event, as in SPPassAction, SPObserveDeckAction and SPPubPointsAction
+	public boolean isChanceMove(int move) {
+		int upcomingDeck;
+		switch (SPMove.kind(move)) {
+			case SPMove.OBSERVE:
+				return true; // it is illegal to observe the last card in a deck
+			case SPMove.PUB_POINTS:
+				if (nextPubPlayer() >= 0) {
+					return false;
+				}
+				upcomingDeck = SPState.ARISTOCRAT;
+				break;
+			case SPMove.PASS:
+				for (int player = 0; player < numPlayers; player++) {
+					if (player != playerTurn && !playerPassed[player]) {
+						return false; // another player has not passed, so this is not a chance action
+					}
+				}
+				if (phase == SPState.WORKER) {
+					upcomingDeck = SPState.BUILDING;
+				}
+				else if (phase == SPState.BUILDING) {
+					for (int player = 0; player < numPlayers; player++) {
+						if (holding(player, PUB) > 0) {
+							return false; // pub action is next
+						}
+					}
+					upcomingDeck = SPState.ARISTOCRAT;
+				}
+				else if (phase == SPState.ARISTOCRAT) {
+					upcomingDeck = SPState.TRADING;
+				}
+				else if (phase == SPState.TRADING) {
+					for (int deck = 0; deck < SPState.NUM_DECKS; deck++) {
+						if (zoneSize[deck] == 0) {
+							return false; // game over, no chance action
+						}
+					}
+					return zoneSize[UPPER_ROW] < SPState.MARKET_SIZE;
+				}
+				else {
+					return false;
+				}
+				break;
+			default:
+				return false;
+		}
+		return zoneSize[upcomingDeck] > 0 && zoneSize[UPPER_ROW] + zoneSize[LOWER_ROW] < SPState.MARKET_SIZE;
+	}
+
+	// Play uniformly random moves to the end of the game with the caller's move buffer, returning the number of moves made
+	// by the given player
+	public int playRandomGame(int[] moves, int player, RandomGenerator random) {
+		int numPlayerMoves = 0;
+		while (!isGameOver()) {
+			if (playerTurn == player) {
+				numPlayerMoves++;
+			}
+			applyMove(moves[random.nextInt(generateMoves(moves))], random);
+		}
+		return numPlayerMoves;
+	}
+
+	// Estimate the decisions left in the game for the player to move, including this one, as the average number of moves
+	// they make in numPlayouts uniformly random games from the state, played on one compact scratch state
+	public static double estimateDecisionsRemaining(SPState state, int numPlayouts, RandomGenerator random) {
+		SPCompactState playout = new SPCompactState(state);
+		int[] moves = MOVE_BUFFER.get();
+		int totalDecisions = 0;
+		for (int p = 0; p < numPlayouts; p++) {
+			totalDecisions += playout.copyFrom(state).playRandomGame(moves, state.playerTurn, random);
+		}
+		return (double) totalDecisions / numPlayouts;
+	}
+
+	@Override
+	public SPCompactState clone() {
+		try {
+			SPCompactState copy = (SPCompactState) super.clone();
+			copy.cards = cards.clone();
+			copy.zoneSize = zoneSize.clone();
+			copy.playerRubles = playerRubles.clone();
+			copy.playerPoints = playerPoints.clone();
+			copy.playerPassed = playerPassed.clone();
+			copy.startingPlayer = startingPlayer.clone();
+			copy.usedObservatories = usedObservatories.clone();
+			copy.isWinner = isWinner.clone();
+			copy.holdingCounts = holdingCounts.clone();
+			return copy;
+		} catch (CloneNotSupportedException e) {
+			throw new AssertionError(); // Can't happen
+		}
+	}
+
+	@Override
+	public String toString() {
+		return toSPState().toString();
+	}
+
+	// Check that the compact state matches the given state exactly, including deck order
+	public boolean matches(SPState state) {
+		for (int player = 0; player < numPlayers; player++) {
+			if (!Arrays.equals(holdingCounts, player * NUM_CARDS, (player + 1) * NUM_CARDS, state.playerCardCounts[player], 0, NUM_CARDS)) {
+				return false;
+			}
+		}
+		SPState other = toSPState();
+		return other.toString().equals(state.toString())
+				&& other.workerDeck.equals(state.workerDeck) && other.buildingDeck.equals(state.buildingDeck)
+				&& other.aristocratDeck.equals(state.aristocratDeck) && other.tradingDeck.equals(state.tradingDeck)
+				&& other.discardPile.equals(state.discardPile) && other.playerHands.equals(state.playerHands)
+				&& other.observedCard == state.observedCard
+				&& Arrays.equals(other.playerPassed, state.playerPassed)
+				&& Arrays.equals(other.usedObservatories, state.usedObservatories)
+				&& Arrays.equals(other.startingPlayer, state.startingPlayer)
+				&& Arrays.equals(other.isWinner, state.isWinner);
+	}
+
+	public static void main(String[] args) {
+		// Cross-check the compact engine against SPState with random games and identical chance seeds
+		int numGames = 1000;
+		java.util.Random random = new java.util.Random(0);
+		int[] moves = new int[SPState.MAX_LEGAL_ACTIONS];
+		int[] compactMoves = new int[SPState.MAX_LEGAL_ACTIONS];
+		for (int game = 0; game < numGames; game++) {
+			SPState state = new SPState();
+			SPCompactState compact = new SPCompactState(state);
+			while (!state.isGameOver()) {
+				int numMoves = state.generateMoves(moves);
+				if (compact.generateMoves(compactMoves) != numMoves || !Arrays.equals(moves, 0, numMoves, compactMoves, 0, numMoves)) {
+					throw new IllegalStateException("Legal moves differ: " + state.getLegalActions() + " vs. " + compact.getLegalActions());
+				}
+				ArrayList<SPAction> actions = state.getLegalActions();
+				ArrayList<SPCompactAction> compactActions = compact.getLegalActions();
+				for (int i = 0; i < numMoves; i++) {
+					if (!actions.get(i).toString().equals(compactActions.get(i).toString())
+							|| actions.get(i).isChanceAction() != compactActions.get(i).isChanceAction()) {
+						throw new IllegalStateException("Legal actions differ: " + actions.get(i) + " vs. " + compactActions.get(i));
+					}
+				}
+				int moveIndex = random.nextInt(numMoves);
+				long seed = random.nextLong();
+				state = actions.get(moveIndex).take(seed);
+				compact.applyMove(compactMoves[moveIndex], SPAction.seededCardRandom(seed));
+				if (!compact.matches(state)) {
+					throw new IllegalStateException("States differ after " + actions.get(moveIndex) + ":\n" + state + "\nvs.\n" + compact);
+				}
+			}
+		}
+		System.out.printf("%d random games agree between SPState and SPCompactState.%n", numGames);
+
+		// Compare random playout speed from the initial state as players run them: both engines copy the root into one
+		// scratch state per playout and play packed moves in place.  Each engine is timed after a warm-up round, so that
+		// neither is measured while the JIT is still compiling it.
+		int numPlayouts = 20000;
+		SPState root = new SPState();
+		SPState scratch = root.clone();
+		SPCompactState compactScratch = new SPCompactState(root);
+		long stateMillis = 0, compactMillis = 0;
+		for (int round = 0; round < 2; round++) {
+			long startMillis = System.currentTimeMillis();
+			for (int i = 0; i < numPlayouts; i++) {
+				SPState state = scratch.copyFrom(root);
+				while (!state.isGameOver()) {
+					state.sampleRandomLegalAction(random).take(state);
+				}
+			}
+			stateMillis = System.currentTimeMillis() - startMillis;
+			startMillis = System.currentTimeMillis();
+			for (int i = 0; i < numPlayouts; i++) {
+				compactScratch.copyFrom(root).playRandomGame(moves, 0, random);
+			}
+			compactMillis = System.currentTimeMillis() - startMillis;
+		}
+		System.out.printf("%d random playouts: SPState %d ms, SPCompactState %d ms (%.1fx).%n", numPlayouts, stateMillis,
+				compactMillis, (double) stateMillis / compactMillis);
+	}
+}
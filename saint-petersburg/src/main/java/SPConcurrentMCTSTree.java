@@ -0,0 +1,187 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/* SPConcurrentMCTSTree - MCTS search tree in parallel arrays that many threads search and update at once.
+ * The layout is that of SPMCTSTree: a node is an int index, its children one contiguous block.  Visits are atomic
+ * counters and reward sums atomic doubles, so backups need no locks.  Expansion is lock-free: a thread claims an
+ * unexpanded node with a compare-and-set of its child count, reserves a block of nodes with one atomic add, fills it in,
+ * and publishes it with a volatile write of the child count; other threads treat a claimed node as a leaf until then.
+ * Capacity is fixed during a search, since arrays cannot grow under concurrent readers; once it is used up, leaves stay
+ * leaves.  Node and child data written before publication are read only after it, so they need no synchronization.
+ */
+public final class SPConcurrentMCTSTree {
+
+	public static final int NONE = -1; // Index for "no node"
+	private static final int CLAIMED = -1; // Child count of a node being expanded, or left a leaf for lack of capacity
+
+	private final AtomicInteger size = new AtomicInteger();
+	private final AtomicIntegerArray visits;
+	private final AtomicLongArray rewards; // bits of double reward sums
+	private final int[] actions; // action index taken to get to the node
+	private final int[] players; // player that acted to get to the node, or a negative seed value for a chance node
+	private final int[] firstChild;
+	private final AtomicIntegerArray numChildren; // 0 until expanded, CLAIMED while expanding, then the child count
+
+	public SPConcurrentMCTSTree(int capacity) {
+		visits = new AtomicIntegerArray(capacity);
+		rewards = new AtomicLongArray(capacity);
+		actions = new int[capacity];
+		players = new int[capacity];
+		firstChild = new int[capacity];
+		numChildren = new AtomicIntegerArray(capacity);
+	}
+
+	public int capacity() {
+		return actions.length;
+	}
+
+	// The number of nodes
+	public int size() {
+		return Math.min(size.get(), capacity());
+	}
+
+	// Clear the tree and add a root node for the given player to act, returning its index; not thread-safe
+	public int newRoot(int player) {
+		size.set(1);
+		initNode(0, 0, player);
+		return 0;
+	}
+
+	private void initNode(int node, int action, int player) {
+		visits.set(node, 0);
+		rewards.set(node, Double.doubleToRawLongBits(0.0));
+		actions[node] = action;
+		players[node] = player;
+		firstChild[node] = NONE;
+		numChildren.set(node, 0);
+	}
+
+	// Claim an unexpanded node for expansion by the calling thread, which must then call addChildren() on it
+	public boolean claim(int node) {
+		return numChildren.compareAndSet(node, 0, CLAIMED);
+	}
+
+	// Reserve count children for a node claimed by the calling thread and return the index of the first, or NONE if the
+	// tree is full, in which case the node stays a leaf.  The children have action 0 and the given player, and are not
+	// visible to other threads until publish(node).
+	public int addChildren(int node, int count, int player) {
+		int first = size.getAndAdd(count);
+		if (first + count > capacity()) {
+			return NONE;
+		}
+		for (int child = first; child < first + count; child++) {
+			initNode(child, 0, player);
+		}
+		firstChild[node] = first;
+		return first;
+	}
+
+	// Make the children of a node added by the calling thread visible to all threads
+	public void publish(int node, int count) {
+		numChildren.set(node, count);
+	}
+
+	// Set a node that is not yet published
+	public void setNode(int node, int action, int player) {
+		actions[node] = action;
+		players[node] = player;
+	}
+
+	public int getVisits(int node) {
+		return visits.get(node);
+	}
+
+	public double getReward(int node) {
+		return Double.longBitsToDouble(rewards.get(node));
+	}
+
+	public int getAction(int node) {
+		return actions[node];
+	}
+
+	public int getPlayer(int node) {
+		return players[node];
+	}
+
+	// The first child of a node; valid only after getNumChildren() or isExpanded() has seen the node expanded, since
+	// only that volatile read orders it after the expanding thread's write
+	public int getFirstChild(int node) {
+		return firstChild[node];
+	}
+
+	// The number of published children, or 0 for a leaf, including a node that another thread is expanding
+	public int getNumChildren(int node) {
+		return Math.max(numChildren.get(node), 0);
+	}
+
+	public boolean isExpanded(int node) {
+		return numChildren.get(node) > 0;
+	}
+
+	public boolean isChanceNode(int node) {
+		return players[node] < 0;
+	}
+
+	// Count visits of the node, e.g. virtual losses on the way down
+	public void addVisits(int node, int count) {
+		visits.addAndGet(node, count);
+	}
+
+	public void addReward(int node, double reward) {
+		long bits;
+		do {
+			bits = rewards.get(node);
+		} while (!rewards.compareAndSet(node, bits, Double.doubleToRawLongBits(Double.longBitsToDouble(bits) + reward)));
+	}
+
+	// Swap the actions and players of two unpublished sibling nodes
+	public void swapNodes(int node, int other) {
+		int action = actions[node];
+		actions[node] = actions[other];
+		actions[other] = action;
+		int player = players[node];
+		players[node] = players[other];
+		players[other] = player;
+	}
+
+	// The child with the highest UCT value, the first one on ties (so the first unvisited child), or NONE.  Statistics
+	// read while other threads update them may be a visit apart, which UCT tolerates.
+	public int bestChildUCT(int node, double uctC) {
+		int best = NONE;
+		double bestValue = Double.NEGATIVE_INFINITY;
+		double logParentVisits = Math.log(Math.max(visits.get(node), 1));
+		int count = getNumChildren(node); // read before firstChild, which the volatile count publishes
+		for (int child = count > 0 ? firstChild[node] : 0, end = child + count; child < end; child++) {
+			int childVisits = visits.get(child);
+			if (childVisits == 0) {
+				return child;
+			}
+			double value = getReward(child) / childVisits + uctC * Math.sqrt(logParentVisits / childVisits);
+			if (best == NONE || value > bestValue) {
+				best = child;
+				bestValue = value;
+			}
+		}
+		return best;
+	}
+
+	// The most visited child, the first one on ties, or NONE
+	public int bestChildByVisits(int node) {
+		int best = NONE;
+		int count = getNumChildren(node); // read before firstChild, which the volatile count publishes
+		for (int child = count > 0 ? firstChild[node] : 0, end = child + count; child < end; child++) {
+			if (best == NONE || visits.get(child) > visits.get(best)) {
+				best = child;
+			}
+		}
+		return best;
+	}
+
+	public String toString(int node) {
+		int nodeVisits = getVisits(node);
+		return String.format("%d: Player: %d, Visits: %d, Total Reward: %f, Q: %.2f, Children: %d",
+				actions[node], players[node], nodeVisits, getReward(node),
+				(nodeVisits == 0 ? 0.0 : getReward(node) / nodeVisits), getNumChildren(node));
+	}
+}
@@ -1,3 +1,4 @@
+
 public class SPDiscardAction extends SPAction {
 
 	public SPDiscardAction(SPState state) {
@@ -5,8 +6,8 @@ public class SPDiscardAction extends SPAction {
 	}
 
 	@Override
-	public SPState take(SPState state) {
-		state.discardPile.add(state.observedCard);
+	protected SPState apply(SPState state, SPDrawPolicy draws, SPUndoRecord undo) {
+		addCard(state, SPState.DISCARD_ZONE, state.observedCard, undo);
 		state.observedCard = null;
 		// Advance the turn to the next player
 		state.playerTurn = (state.playerTurn + 1) % state.numPlayers;
@@ -0,0 +1,25 @@
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
+
+/* SPDrawPolicy - Chooses the deck position of each card an SPAction draws.  The game draws a uniformly random position;
+ * search code can instead apply a chosen chance outcome (SPChanceOutcome) or draw a determinized deck in order
+ * (TOP_OF_DECK).  The drawn card is replaced by the last card of the deck, as in SPAction.drawRandomCard.
+ */
+@FunctionalInterface
+public interface SPDrawPolicy {
+
+	// The index of the card to draw from the given non-empty deck
+	int drawIndex(List<SPCard> deck);
+
+	// Draws a uniformly random card with the calling thread's ThreadLocalRandom
+	SPDrawPolicy THREAD_LOCAL_RANDOM = deck -> ThreadLocalRandom.current().nextInt(deck.size());
+
+	// Draws the last card of the deck, so that a shuffled deck is drawn in order
+	SPDrawPolicy TOP_OF_DECK = deck -> deck.size() - 1;
+
+	// Draws a uniformly random card with the given random source
+	static SPDrawPolicy random(RandomGenerator random) {
+		return deck -> random.nextInt(deck.size());
+	}
+}
@@ -0,0 +1,50 @@
+import java.util.ArrayList;
+
+/* SPGameResult - The outcome of a simulated game without its transcript: winners, final points and rubles, rounds and moves. */
+public class SPGameResult {
+	final ArrayList<String> playerNames;
+	final boolean[] isWinner;
+	final int[] playerPoints;
+	final int[] playerRubles;
+	final int numRounds;
+	final int numMoves; // moves chosen by players
+	final int numForcedMoves; // forced moves applied without asking a player
+
+	SPGameResult(ArrayList<String> playerNames, SPState finalState, int numMoves) {
+		this.playerNames = playerNames;
+		this.isWinner = finalState.isWinner.clone();
+		this.playerPoints = finalState.playerPoints.clone();
+		this.playerRubles = finalState.playerRubles.clone();
+		this.numRounds = finalState.round;
+		this.numMoves = numMoves;
+		this.numForcedMoves = finalState.numForcedMoves;
+	}
+
+	public ArrayList<String> getPlayerNames() {
+		return playerNames;
+	}
+
+	public boolean[] getWinners() {
+		return isWinner;
+	}
+
+	public int[] getPoints() {
+		return playerPoints;
+	}
+
+	public int[] getRubles() {
+		return playerRubles;
+	}
+
+	public int getNumRounds() {
+		return numRounds;
+	}
+
+	public int getNumMoves() {
+		return numMoves;
+	}
+
+	public int getNumForcedMoves() {
+		return numForcedMoves;
+	}
+}
@@ -0,0 +1,269 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class SPISMCTSPlayer extends SPPlayer { // Single-observer information set MCTS (SO-ISMCTS)
+    // Peter I. Cowling, Edward J. Powley and Daniel Whitehouse, "Information Set Monte Carlo Tree Search"
+    //   (IEEE TCIAIG 2012)
+    // Each iteration searches one determinization of the root state, in which the unseen order of the decks is
+    // shuffled and cards are drawn from the top, so the chance events of the iteration are fixed by the determinization.
+    // Tree nodes are keyed by action only, not by chance outcome, so all determinizations share one node per decision,
+    // and an action is identified by the card it takes rather than its position in a market row.  Since the actions
+    // available at a node differ between determinizations, UCB uses how often a child was available instead of how
+    // often its parent was visited.
+    // Two-player only: the heuristic evaluation is a win probability for the player to move, its complement the other's.
+
+    double uctC = 0.7; // UCB exploration constant
+    int numIterations = 1000000; // Number of ISMCTS iterations per move
+    int playoutTerminationDepth = 4; // Depth at which to terminate playouts
+    AIDanSPStateFeaturesLR3 features = new AIDanSPStateFeaturesLR3(); // Features for heuristic evaluation
+    boolean verbose = true; // Verbosity flag
+    int nodes = 0; // Node counter
+    // time management fields
+    private long startMs = UNKNOWN_TIME; // start time of move computation
+    int endEstimatePlayouts = 3; // number of playouts to estimate the
+    //  number of remaining decisions
+    double fOpening = 1.1; // bias towards opening move search
+    // Hendrik Baier and Mark H.M. Winands, "Time Management for Monte-Carlo
+    //   Tree Search in Go" (ACG 2013)
+
+    // A node of the information set tree, reached by an action from the observer's point of view
+    static class ISNode {
+        final long actionKey; // determinization-independent key of the action leading to the node
+        final int player; // player that chose the action, or -1 for the root
+        int visits = 0;
+        double totalReward = 0.0; // rewards of player
+        int availability = 0; // number of times the action was legal when the parent was visited
+        int lastAvailableStep = -1; // selection step that last counted the availability, for duplicate cards
+        final List<ISNode> children = new ArrayList<>();
+
+        ISNode(long actionKey, int player) {
+            this.actionKey = actionKey;
+            this.player = player;
+        }
+
+        ISNode findChild(long key) {
+            for (ISNode child : children) {
+                if (child.actionKey == key) {
+                    return child;
+                }
+            }
+            return null;
+        }
+
+        double ucbValue(double uctC) {
+            return totalReward / visits + uctC * Math.sqrt(Math.log(availability) / visits);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d: Player: %d, Visits: %d, Availability: %d, Q: %.2f, Children: %d",
+                    actionKey, player, visits, availability, (visits == 0 ? 0.0 : totalReward / visits), children.size());
+        }
+    }
+
+    public SPISMCTSPlayer() {
+        super("SPISMCTSPlayer");
+    }
+
+    @Override
+    public int getAction(SPState state) {
+        startMs = System.currentTimeMillis();
+        int[] moves = new int[SPState.MAX_LEGAL_ACTIONS];
+        int numMoves = state.generateMoves(moves);
+        if (numMoves == 1) {
+            return 0;
+        }
+        ISNode root = ISMCTSSearch(state);
+        ISNode bestChild = null;
+        for (ISNode child : root.children) {
+            if (bestChild == null || child.visits > bestChild.visits) {
+                bestChild = child;
+            }
+        }
+        int actionIndex = findMove(state, moves, numMoves, bestChild.actionKey);
+        if (verbose) {
+            System.out.println("Number of legal actions: " + numMoves);
+            System.out.println("Root Node:\n" + root);
+            for (ISNode child : root.children) {
+                System.out.println(child);
+            }
+            System.out.println("Selected Action: " + actionIndex);
+        }
+        return actionIndex;
+    }
+
+    // Search from the root state, returning the root node of the tree
+    public ISNode ISMCTSSearch(SPState rootState) {
+        if (rootState.numPlayers != 2) {
+            throw new IllegalArgumentException("SPISMCTSPlayer only plays two-player games, not " + rootState.numPlayers);
+        }
+        long turnSearchTimeMillis = 1000L; // default fixed time per move
+        if (timeRemainingMillis != UNKNOWN_TIME) {
+            // Estimate the number of decisions remaining (including this)
+            // For this we do a specified number of playouts, count the
+            //   current player decisions, and average.
+            double movesExpected = SPCompactState.estimateDecisionsRemaining(rootState, endEstimatePlayouts,
+                    ThreadLocalRandom.current());
+            if (verbose) { // print the estimated number of decisions remaining
+                System.out.printf("Estimated decisions remaining: %.2f\n", movesExpected);
+            }
+            // Allocate time for this move
+            turnSearchTimeMillis = (long) (fOpening * timeRemainingMillis / movesExpected);
+            // Ensure that the move time is not more than a 20th of the remaining time
+            turnSearchTimeMillis = Math.min(turnSearchTimeMillis,
+                timeRemainingMillis / 20L);
+        }
+        // Define variables to support periodic checking of the clock
+        int numBlockIterations = 100; // check time every 100 iterations
+        long lastIterationBlockMillis = UNKNOWN_TIME; // time since last check
+        long blockStartMillis = System.currentTimeMillis();
+        startMs = System.currentTimeMillis();
+
+        ISNode root = new ISNode(0L, -1);
+        nodes = 1;
+        List<ISNode> path = new ArrayList<>(); // nodes visited this iteration
+        int[] moves = new int[SPState.MAX_LEGAL_ACTIONS]; // reusable packed move buffer
+        long[] keys = new long[SPState.MAX_LEGAL_ACTIONS]; // action keys of the moves
+        ISNode[] moveChildren = new ISNode[SPState.MAX_LEGAL_ACTIONS]; // child of each move, or null
+        List<Integer> untriedMoves = new ArrayList<>(); // moves without a child
+        double[] returns = new double[rootState.numPlayers]; // returns of the current iteration
+        int step = 0; // selection step counter
+        for (int iter = 0; iter < numIterations; iter++) { // ISMCTS loop
+            // Check elapsed time every numBlockIterations
+            if ((iter + 1) % numBlockIterations == 0) {
+                long currentMillis = System.currentTimeMillis();
+                lastIterationBlockMillis = currentMillis - blockStartMillis;
+                long elapsedMillis = currentMillis - startMs;
+                // If another block of the same duration would exceed
+                // the allocated time, break
+                if (elapsedMillis + lastIterationBlockMillis > turnSearchTimeMillis) {
+                    if (verbose) {
+                        System.out.printf("ISMCTS terminating at iteration %d due to time limit.\n", iter + 1);
+                    }
+                    break;
+                }
+                blockStartMillis = currentMillis;
+            }
+
+            // Determinization: shuffle the unseen deck order and draw from the top
+            SPState state = SPStatePool.borrow(rootState);
+            for (int deck = 0; deck < SPState.NUM_DECKS; deck++) {
+                Collections.shuffle(state.getWritableZone(deck), ThreadLocalRandom.current());
+            }
+            state.skipForcedMoves = true; // no tree nodes or playout steps for forced moves
+            path.clear();
+            path.add(root);
+            ISNode node = root;
+
+            // Selection/Expansion phase: descend while every legal action of the determinization has a child, counting
+            // the availability of each legal child, then add a child for one untried action
+            while (!state.isGameOver()) {
+                int numMoves = state.generateMoves(moves);
+                untriedMoves.clear();
+                step++;
+                for (int i = 0; i < numMoves; i++) {
+                    keys[i] = actionKey(state, moves[i]);
+                    moveChildren[i] = node.findChild(keys[i]);
+                    if (moveChildren[i] == null) {
+                        untriedMoves.add(i);
+                    } else if (moveChildren[i].lastAvailableStep != step) {
+                        moveChildren[i].availability++;
+                        moveChildren[i].lastAvailableStep = step;
+                    }
+                }
+                if (!untriedMoves.isEmpty()) {
+                    // Expand: add a child for a random untried action, take it and leave the tree
+                    int i = untriedMoves.get(ThreadLocalRandom.current().nextInt(untriedMoves.size()));
+                    ISNode child = new ISNode(keys[i], state.playerTurn);
+                    child.availability = 1;
+                    node.children.add(child);
+                    nodes++;
+                    path.add(child);
+                    state.decodeMove(moves[i]).take(state, SPDrawPolicy.TOP_OF_DECK, null);
+                    break;
+                }
+                // All legal actions have children; select the best legal child by UCB
+                int best = 0;
+                for (int i = 1; i < numMoves; i++) {
+                    if (moveChildren[i].ucbValue(uctC) > moveChildren[best].ucbValue(uctC)) {
+                        best = i;
+                    }
+                }
+                node = moveChildren[best];
+                path.add(node);
+                state.decodeMove(moves[best]).take(state, SPDrawPolicy.TOP_OF_DECK, null);
+            }
+
+            // Simulation phase (DEFAULT_POLICY) and Evaluation
+            // Early playout termination (EPT) after a fixed depth
+            int stepsRemaining = playoutTerminationDepth;
+            while (!state.isGameOver() && stepsRemaining > 0) {
+                state.sampleRandomLegalAction(ThreadLocalRandom.current()).take(state, SPDrawPolicy.TOP_OF_DECK, null);
+                stepsRemaining--;
+            }
+            if (state.isGameOver()) {
+                // Terminal state: use actual returns
+                for (int i = 0; i < state.numPlayers; i++) {
+                    returns[i] = state.isWinner[i] ? 1.0 : 0.0;
+                }
+            } else {
+                // Non-terminal state: use heuristic evaluation
+                double winProb = features.predict(state);
+                returns[state.playerTurn] = winProb;
+                returns[1 - state.playerTurn] = 1.0 - winProb;
+            }
+            SPStatePool.release(state);
+
+            // Backpropagation phase (BACKUP)
+            for (ISNode n : path) {
+                n.visits++;
+                if (n.player >= 0) {
+                    n.totalReward += returns[n.player];
+                }
+            }
+        }
+
+        if (verbose) {
+            System.out.printf("ISMCTS completed in %d ms, %d nodes created.\n",
+                    (System.currentTimeMillis() - startMs), nodes);
+        }
+        return root;
+    }
+
+    // A key for a move that is the same in every determinization: buys and adds to hand are identified by the card
+    // taken instead of its position in its zone
+    static long actionKey(SPState state, int move) {
+        int kind = SPMove.kind(move);
+        if (kind != SPMove.BUY && kind != SPMove.ADD_TO_HAND) {
+            return move;
+        }
+        int source = SPMove.source(move);
+        SPCard card;
+        switch (source) {
+            case SPMove.HAND:
+                card = state.playerHands.get(state.playerTurn).get(SPMove.index(move));
+                break;
+            case SPMove.UPPER_ROW:
+                card = state.upperCardRow.get(SPMove.index(move));
+                break;
+            case SPMove.LOWER_ROW:
+                card = state.lowerCardRow.get(SPMove.index(move));
+                break;
+            default:
+                card = state.observedCard;
+        }
+        return ((long) card.id << 32) | SPMove.pack(kind, source, 0, SPMove.replacedId(move), SPMove.cost(move));
+    }
+
+    // The index of the first legal move with the given key
+    private static int findMove(SPState state, int[] moves, int numMoves, long key) {
+        for (int i = 0; i < numMoves; i++) {
+            if (actionKey(state, moves[i]) == key) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("No legal action for key " + key);
+    }
+}
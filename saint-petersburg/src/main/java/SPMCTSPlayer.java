@@ -1,19 +1,32 @@
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
-public class SPMCTSPlayer extends SPPlayer { // simplified and ported from
+public class SPMCTSPlayer extends SPPlayer implements Cloneable, SPRootParallelSearch.Searcher<SPMCTSPlayer> { // simplified and ported from
     // Marc Lanctot's OpenSpiel MCTS implementation in C++
 
     double uctC = 2.0; // UCT exploration constant
-    int numChanceSamples = 10; // Number of chance samples per chance node
+    int numChanceSamples = 10; // Maximum number of distinct outcomes kept per chance node
     int numIterations = 1000000; // Number of MCTS iterations per move
     int playoutTerminationDepth = 4; // Depth at which to terminate playouts
+    // Play each playout to the end of the game on an SPCompactState, which is faster than SPState for whole games, and
+    //   score its winners; playoutTerminationDepth and the heuristic evaluation are then unused
+    boolean compactPlayouts = false;
     AIDanSPStateFeaturesLR3 features = new AIDanSPStateFeaturesLR3(); // Features for heuristic evaluation
+    int leafBatchSize = 1; // Leaves selected under virtual loss and evaluated together in one batch call
+    // Evaluator of leaf win probabilities with a batched predictBatch(), e.g. an SPStateFeaturesNN1, or null for
+    //   features; root-parallel workers share it, so it must be thread-safe when numThreads > 1
+    SPStateEvaluator batchEvaluator = null;
     boolean verbose = true; // Verbosity flag
-    Random chanceSeedRng = new java.util.Random(); // RNG for chance seeds
     int nodes = 0; // Node counter
+    SPMCTSTree tree = new SPMCTSTree(); // Search tree, its arrays reused from move to move
+    int numThreads = 1; // Threads searching independent trees from the root, merged to choose the action (root parallelization)
+    private SPRootParallelSearch<SPMCTSPlayer> rootSearch = null; // searchers of the other trees, created on first use
+    boolean reuseTree = true; // Start each search from the subtree of the last search for the position reached
+    int maxReuseDepth = 6; // Tree levels below the last chosen action searched for that subtree
+    private SPState lastRootState = null; // root state of the last search
+    private int lastChosenNode = SPMCTSTree.NONE; // node of the action chosen in the last search
     // time management fields
     private long startMs = UNKNOWN_TIME; // start time of move computation
     int endEstimatePlayouts = 3; // number of playouts to estimate the
@@ -27,111 +40,47 @@ public class SPMCTSPlayer extends SPPlayer { // simplified and ported from
         super("SPMCTSPlayer");
     }
 
-    class SearchNode {
-        public int action = 0; // action index taken to get to this node
-        public int player = 0; // player that acted to get to this node,
-                          // or a negative seed value for a chance node
-        public int exploreCount = 0; // number of times node was explored
-        public double totalReward = 0.0; // sum of rewards from simulations
-        public final List<SearchNode> children = new ArrayList<>(); // child nodes
-
-        // constructor initializing action and player
-        public SearchNode(int action, int player) {
-            this.action = action;
-            this.player = player;
-        }
-
-        public double uctValue(int parentExploreCount, double uctC) {
-            if (exploreCount == 0) {
-                return Double.POSITIVE_INFINITY; // prioritize unvisited nodes
-            }
-            double avgReward = totalReward / exploreCount;
-            double explorationTerm = uctC * Math.sqrt(Math.log(parentExploreCount) / exploreCount);
-            return avgReward + explorationTerm;
-        }
-
-        public SearchNode bestChildByVisits() {
-            return children.stream()
-                    .max((a, b) -> Integer.compare(a.exploreCount, b.exploreCount))
-                    .orElse(null);
-        }
-
-        public SearchNode bestChildUCT() {
-            return children.stream()
-                    .max((a, b) -> Double.compare(a.uctValue(exploreCount, uctC),
-                            b.uctValue(exploreCount, uctC)))
-                    .orElse(null);
-        }
-
-        public String toString() {
-            return String.format("%d: Player: %d, Visits: %d, Total Reward: %f, Q: %.2f, Children: %d",
-                    action, player, exploreCount, totalReward,
-                    (exploreCount == 0 ? 0.0 : totalReward / exploreCount),
-                    children.size()
-            );
-        }
-
-        public String childrenStr(int parentExploreCount, double uctC) {
-            StringBuilder sb = new StringBuilder();
-            Comparator<SearchNode> uctComparator = (a, b) -> Double.compare(
-                    a.uctValue(parentExploreCount, uctC),
-                    b.uctValue(parentExploreCount, uctC)
-            );
-            children.stream()
-                    .sorted(uctComparator.reversed())
-                    .forEach(child -> {
-                        sb.append(String.format("%s\n", child.toString()));
-                    });
-            return sb.toString();
-        }
-
-        public boolean isChanceNode() {
-            return player < 0;
-        }   
-    }
-
     @Override
     public int getAction(SPState state) {
         startMs = System.currentTimeMillis();
         // get the legal actions for the current state,
         // compute the number of legal actions,
-        // call MCTSSearch to get the root SearchNode,
+        // call MCTSSearch to get the root node,
         // select the best child by visits,
         // and return the action of that child.
         ArrayList<SPAction> legalActions = state.getLegalActions();
         int numLegalActions = legalActions.size();
-        SearchNode root = MCTSSearch(state);
-        SearchNode bestChild = root.bestChildByVisits();
+        if (numThreads > 1) {
+            return rootParallelAction(state);
+        }
+        int root = MCTSSearch(state);
+        int bestChild = tree.bestChildByVisits(root);
         if (verbose) {
             System.out.println("Number of legal actions: " + numLegalActions);
-            System.out.println("Root Node:\n" + root.toString());
-            System.out.println("Children:\n" + root.childrenStr(root.exploreCount, uctC));
-            System.out.println("Selected Action: " + bestChild.action);
+            System.out.println("Root Node:\n" + tree.toString(root));
+            System.out.println("Children:\n" + tree.childrenString(root, uctC));
+            System.out.println("Selected Action: " + tree.getAction(bestChild));
         }
-        return bestChild.action;
+        lastRootState = state.clone();
+        lastChosenNode = bestChild;
+        return tree.getAction(bestChild);
+    }
+
+    // Search from the root state, returning the root node of the tree
+    public int MCTSSearch(SPState rootState) { // UCT_SEARCH
+        long deadlineMillis = System.currentTimeMillis() + turnSearchTimeMillis(rootState);
+        return MCTSSearch(rootState, deadlineMillis);
     }
 
-    public SearchNode MCTSSearch(SPState rootState) { // UCT_SEARCH
+    // The time to search for this move
+    private long turnSearchTimeMillis(SPState rootState) {
         long turnSearchTimeMillis = 1000L; // default fixed time per move
         if (timeRemainingMillis != UNKNOWN_TIME) {
             // Estimate the number of decisions remaining (including this)
             // For this we do a specified number of playouts, count the
             //   current player decisions, and average.
-            int currentPlayer = rootState.playerTurn;
-            int totalDecisions = 0;
-            for (int p = 0; p < endEstimatePlayouts; p++) {
-                SPState simState = rootState.clone();
-                while (!simState.isGameOver()) {
-                    if (simState.playerTurn == currentPlayer) {
-                        totalDecisions++;
-                    }
-                    ArrayList<SPAction> legalActions = simState.getLegalActions();
-                    int actionIndex = (int) (Math.random() * legalActions.size());
-                    SPAction action = legalActions.get(actionIndex);
-                    simState = action.take();
-                }
-            }
-            double movesExpected = (double) totalDecisions / endEstimatePlayouts;
+            double movesExpected = SPCompactState.estimateDecisionsRemaining(rootState, endEstimatePlayouts,
+                    ThreadLocalRandom.current());
             if (verbose) { // print the estimated number of decisions remaining
                 System.out.printf("Estimated decisions remaining: %.2f\n", movesExpected);
             }
@@ -141,27 +90,54 @@ public class SPMCTSPlayer extends SPPlayer { // simplified and ported from
             turnSearchTimeMillis = Math.min(turnSearchTimeMillis, 
                 timeRemainingMillis / 20L);
         }
+        return turnSearchTimeMillis;
+    }
+
+    // Search from the root state until the deadline or numIterations, returning the root node of the tree
+    @Override
+    public int MCTSSearch(SPState rootState, long deadlineMillis) {
         // Define variables to support periodic checking of the clock
         int numBlockIterations = 100; // check time every 100 iterations
         long lastIterationBlockMillis = UNKNOWN_TIME; // time since last check
         long blockStartMillis = System.currentTimeMillis();
 
-        SearchNode rootNode = new SearchNode(0, rootState.playerTurn);
-        expand(rootNode, rootState);
-        nodes = 1; // reset node counter
+        int rootNode = reuseTree ? reuseSubtree(rootState) : SPMCTSTree.NONE;
+        if (rootNode == SPMCTSTree.NONE) {
+            rootNode = tree.newRoot(rootState.playerTurn);
+        }
+        else if (verbose) {
+            System.out.printf("Reusing subtree with %d visits and %d nodes.\n", tree.getVisits(rootNode), tree.size());
+        }
+        if (!tree.isExpanded(rootNode)) {
+            expand(rootNode, rootState);
+        }
+        nodes = tree.size(); // reset node counter
         startMs = System.currentTimeMillis();
 
-        List<SearchNode> path = new ArrayList<>(); // store sequence of
-                                                // SearchNodes visited
-        for (int iter = 0; iter < numIterations; iter++) { // MCTS loop
+        // With leaf batching, a batch of leaves is selected under virtual loss before any of them is evaluated
+        int batchSize = Math.max(leafBatchSize, 1);
+        int[][] paths = new int[batchSize][64]; // sequence of nodes visited per leaf, grown as needed
+        int[] pathLengths = new int[batchSize];
+        // A single search state is walked down the tree and back up
+        //   each iteration with undo records instead of cloning the root.
+        SPState state = rootState.clone();
+        state.skipForcedMoves = true; // no tree nodes or playout steps for forced moves
+        List<SPAction> takenActions = new ArrayList<>(); // actions taken this iteration
+        List<SPUndoRecord> undoRecords = new ArrayList<>(); // reusable, one per ply
+        int[] moves = new int[SPState.MAX_LEGAL_ACTIONS]; // reusable packed move buffer
+        SPChanceOutcome.Sample outcomeSample = new SPChanceOutcome.Sample(); // reusable chance outcome sample
+        SPCompactState compactPlayout = compactPlayouts ? new SPCompactState(rootState) : null; // reusable playout state
+        double[][] returns = new double[batchSize][rootState.numPlayers]; // returns of the current iterations
+        List<SPState> pendingStates = new ArrayList<>(); // non-terminal leaf states of the batch, to evaluate
+        int[] pendingLeaves = new int[batchSize]; // batch index of each pending state
+        for (int iter = 0; iter < numIterations; iter += batchSize) { // MCTS loop
             // Check elapsed time every numBlockIterations
-            if ((iter + 1) % numBlockIterations == 0) {
+            if (iter / numBlockIterations != (iter + batchSize) / numBlockIterations) {
                 long currentMillis = System.currentTimeMillis();
                 lastIterationBlockMillis = currentMillis - blockStartMillis;
-                long elapsedMillis = currentMillis - startMs;
-                // If another block of the same duration would exceed
-                // the allocated time, break
-                if (elapsedMillis + lastIterationBlockMillis > turnSearchTimeMillis) {
+                // If another block of the same duration would pass
+                // the deadline, break
+                if (currentMillis + lastIterationBlockMillis > deadlineMillis) {
                     if (verbose) {
                         System.out.printf("MCTS terminating at iteration %d due to time limit.\n", iter + 1);
                     }
@@ -170,96 +146,127 @@ public class SPMCTSPlayer extends SPPlayer { // simplified and ported from
                 blockStartMillis = currentMillis;
             }
 
-            SPState state = rootState.clone();
-            path.clear();
-            SearchNode node = rootNode;
-
-            // Selection/Expansion phase (TREE_POLICY)
-            // While the state is non-terminal:
-            // - Add the non-chance node to the path
-            // - If the node is not fully expanded, expand it and break
-            // - Otherwise, select the best child by UCT 
-            //   (prioritizing unselected children).
-            // - If the action is a chance action, expand the chance node
-            //   if needed, and reproduce a chance-sampled outcome using
-            //   the stored seed + action index.
-            // We assume that chance nodes are not followed by chance nodes.
-            // After this phase, the path will contain all non-terminal
-            //   nodes visited, and we will either be at a terminal state
-            //   have just left the search tree.
-
-            while (!state.isGameOver()) {
-                path.add(node);
-                if (node.children.isEmpty()) {
-                    // Node is not expanded
-                    expand(node, state); // expand and break
-                    break;
+            int numLeaves = Math.min(batchSize, numIterations - iter);
+            for (int leaf = 0; leaf < numLeaves; leaf++) {
+                int[] path = paths[leaf];
+                int pathLength = 0;
+                takenActions.clear();
+                int node = rootNode;
+
+                // Selection/Expansion phase (TREE_POLICY)
+                // While the state is non-terminal:
+                // - Add the non-chance node to the path
+                // - If the node is not fully expanded, expand it and break
+                // - Otherwise, select the best child by UCT 
+                //   (prioritizing unselected children).
+                // - If the action is a chance action, sample an outcome from
+                //   its true distribution and follow the chance node's child
+                //   for that outcome, adding it if it is new.
+                // We assume that chance nodes are not followed by chance nodes.
+                // After this phase, the path will contain all non-terminal
+                //   nodes visited, and we will either be at a terminal state
+                //   have just left the search tree.
+                // When batching, each node on the path gets its visit now, as a
+                //   virtual loss steering the rest of the batch to other paths.
+
+                while (!state.isGameOver()) {
+                    if (pathLength + 2 > path.length) {
+                        path = paths[leaf] = Arrays.copyOf(path, 2 * path.length);
+                    }
+                    path[pathLength++] = node;
+                    if (batchSize > 1) {
+                        tree.addVisit(node);
+                    }
+                    if (!tree.isExpanded(node)) {
+                        // Node is not expanded
+                        expand(node, state); // expand and break
+                        break;
+                    }
+                    // Node is expanded; select best child by UCT
+                    int nextNode = tree.bestChildUCT(node, uctC);
+                    if (tree.isChanceNode(nextNode)) {
+                        path[pathLength++] = nextNode; // add chance node to path
+                        if (batchSize > 1) {
+                            tree.addVisit(nextNode);
+                        }
+                        // Chance node: sample an outcome
+                        state.generateMoves(moves);
+                        SPAction chanceAction = state.decodeMove(moves[tree.getAction(nextNode)]);
+                        node = outcomeChild(nextNode, chanceAction, state.playerTurn, outcomeSample);
+                        chanceAction.take(state, tree.getOutcome(node), undoRecord(takenActions, undoRecords, chanceAction));
+                    } else {
+                        // Non-chance action node
+                        state.generateMoves(moves);
+                        SPAction action = state.decodeMove(moves[tree.getAction(nextNode)]);
+                        action.take(undoRecord(takenActions, undoRecords, action));
+                        node = nextNode;
+                    }
                 }
-                // Node is expanded; select best child by UCT
-                SearchNode nextNode = node.bestChildUCT();
-                if (nextNode.isChanceNode()) {
-                    path.add(nextNode); // add chance node to path
-                    // Chance node: reproduce chance outcome
-                    SPAction chanceAction = state.getLegalActions().get(nextNode.action);
-                    // Use stored seed + action index to seed RNG
-                    // Sample one of the chance outcomes
-                    int sampleIndex = (int) (Math.random() * numChanceSamples);
-                    int sampleSeed = nextNode.player + sampleIndex;
-                    state = chanceAction.take(sampleSeed);
-                    node = nextNode.children.get(sampleIndex);
-                } else {
-                    // Non-chance action node
-                    state = state.getLegalActions().get(nextNode.action).take();
-                    node = nextNode;
+                pathLengths[leaf] = pathLength;
+
+                // Simulation phase (DEFAULT_POLICY) and Evaluation
+                // Early playout termination (EPT) after a fixed depth
+                int stepsRemaining = compactPlayouts ? 0 : playoutTerminationDepth;
+                while (!state.isGameOver() && stepsRemaining > 0) {
+                    SPAction action = state.sampleRandomLegalAction(ThreadLocalRandom.current());
+                    action.take(undoRecord(takenActions, undoRecords, action));
+                    stepsRemaining--;
                 }
-            }
-            
-            // Simulation phase (DEFAULT_POLICY) and Evaluation
-            // Early playout termination (EPT) after a fixed depth
-            int stepsRemaining = playoutTerminationDepth;
-            while (!state.isGameOver() && stepsRemaining > 0) {
-                ArrayList<SPAction> legalActions = state.getLegalActions();
-                int actionIndex = (int) (Math.random() * legalActions.size());
-                SPAction action = legalActions.get(actionIndex);
-                state = action.take();
-                stepsRemaining--;
-            }
 
-            // Evaluate the (possibly non-terminal) state
-            double[] returns = new double[state.numPlayers];
+                // Evaluate the (possibly non-terminal) state
 
-            // NOTE: This assumes win probability, but would need to be
-            // modified for score difference
-            if (state.isGameOver()) {
-                // Terminal state: use actual returns
-                for (int i = 0; i < state.numPlayers; i++) {
-                    returns[i] = state.isWinner[i] ? 1.0 : 0.0;
-                }
-            } else {
-                // Non-terminal state: use heuristic evaluation
-                double winProb = features.predict(state);
-                if (state.playerTurn == 0) {
-                    returns[0] = winProb;
-                    returns[1] = 1.0 - winProb;
+                // NOTE: This assumes win probability, but would need to be
+                // modified for score difference
+                if (state.isGameOver()) {
+                    // Terminal state: use actual returns
+                    for (int i = 0; i < state.numPlayers; i++) {
+                        returns[leaf][i] = state.isWinner[i] ? 1.0 : 0.0;
+                    }
+                } else if (compactPlayouts) {
+                    // Non-terminal state: play to the end on the compact engine and use its actual returns
+                    compactPlayout.copyFrom(state).playRandomGame(moves, state.playerTurn, ThreadLocalRandom.current());
+                    for (int i = 0; i < state.numPlayers; i++) {
+                        returns[leaf][i] = compactPlayout.isWinner[i] ? 1.0 : 0.0;
+                    }
+                } else if (batchSize == 1) {
+                    // Non-terminal state: use heuristic evaluation
+                    double winProb = (batchEvaluator != null ? batchEvaluator : features).predict(state);
+                    setReturns(returns[leaf], state, winProb);
                 } else {
-                    returns[0] = 1.0 - winProb;
-                    returns[1] = winProb;
+                    // Non-terminal state: evaluate with the rest of the batch
+                    pendingLeaves[pendingStates.size()] = leaf;
+                    pendingStates.add(SPStatePool.borrow(state));
+                }
+
+                // Walk the search state back up to the root
+                for (int i = takenActions.size() - 1; i >= 0; i--) {
+                    takenActions.get(i).undo(state, undoRecords.get(i));
                 }
-                
             }
 
-            // Backpropagation phase (BACKUP)
-           for (int i = path.size() - 1; i >= 0; i--) {
-                SearchNode n = path.get(i);
-                n.exploreCount += 1;
-                if (n.player >= 0) {
-                    // Non-chance node: back up the return for that player
-                    n.totalReward += returns[n.player];
+            // Evaluate the pending leaves of the batch in one call
+            if (!pendingStates.isEmpty()) {
+                double[] winProbs = (batchEvaluator != null ? batchEvaluator : features).predictBatch(pendingStates);
+                for (int i = 0; i < pendingStates.size(); i++) {
+                    setReturns(returns[pendingLeaves[i]], pendingStates.get(i), winProbs[i]);
+                    SPStatePool.release(pendingStates.get(i));
                 }
-                else {
-                    // Chance node: acting player is in the child nodes
-                    int actingPlayer = path.get(i + 1).player;
-                    n.totalReward += returns[actingPlayer];
+                pendingStates.clear();
+            }
+
+            // Backpropagation phase (BACKUP)
+            for (int leaf = 0; leaf < numLeaves; leaf++) {
+                int[] path = paths[leaf];
+                for (int i = pathLengths[leaf] - 1; i >= 0; i--) {
+                    int n = path[i];
+                    // The acting player of a chance node is in its child nodes
+                    double reward = returns[leaf][tree.getPlayer(tree.isChanceNode(n) ? tree.getFirstChild(n) : n)];
+                    if (batchSize > 1) {
+                        tree.addReward(n, reward); // the visit was counted on the way down
+                    }
+                    else {
+                        tree.update(n, reward);
+                    }
                 }
             }
         }
@@ -269,64 +276,270 @@ public class SPMCTSPlayer extends SPPlayer { // simplified and ported from
             System.out.printf("MCTS completed in %d ms, %d nodes created.\n",
                     (endMillis - startMs), nodes);
             // Print the root node and its children as well as the selected best child
-            System.out.println("Root Node:\n" + rootNode.toString());
-            System.out.println("Children:\n" + rootNode.childrenStr(rootNode.exploreCount, uctC));
+            System.out.println("Root Node:\n" + tree.toString(rootNode));
+            System.out.println("Children:\n" + tree.childrenString(rootNode, uctC));
         }
     
         return rootNode;
     }
 
-    public void expand(SearchNode node, SPState state) {
-        // Assumes state is non-terminal, non-chance
-        // For each non-chance action, add a child SearchNode.
-        // For each chance action, create an expanded chance-sampling
-        //   SearchNode with a negative "player" value for reproducable
-        //   chance-sampling, and children that reflect the player
-        //   that chose the chance action.
+    // Find the node of the last search tree for the given root state, reached by the action chosen last time and the
+    // moves and chance outcomes played since, and make its subtree the tree.  Returns the new root, or NONE if the
+    // position is not in the tree, in which case the caller starts a new tree.
+    private int reuseSubtree(SPState rootState) {
+        if (lastRootState == null) {
+            return SPMCTSTree.NONE;
+        }
+        SPState lastState = lastRootState;
+        lastRootState = null;
+        int match = findReusableNode(lastState, rootState);
+        if (match == SPMCTSTree.NONE) {
+            return SPMCTSTree.NONE;
+        }
+        int root = tree.retainSubtree(match);
+        tree.setNode(root, 0, rootState.playerTurn);
+        return root;
+    }
 
-        ArrayList<SPAction> legalActions = state.getLegalActions();
+    // Search the subtree of the last chosen node breadth-first, down to maxReuseDepth tree levels, for a decision node
+    // at the target state.  Each candidate's state is made from the last root state by replaying the actions and chance
+    // outcomes on its path as the search took them, and unmade again with undo records.  States match if their
+    // SPStateKeys are equal, so deck order is ignored (draws take a random position), and if their hands, market rows
+    // and holdings are in the same order, which action indices below the node depend on.  Only visited nodes are
+    // searched, and not below a state that is already past the target (see isPast).
+    private int findReusableNode(SPState lastState, SPState target) {
+        SPStateKey targetKey = new SPStateKey(target);
+        SPState state = lastState.clone();
+        state.skipForcedMoves = true; // replay as the search did
+        int[] moves = new int[SPState.MAX_LEGAL_ACTIONS];
+        List<SPUndoRecord> undoRecords = new ArrayList<>();
+        int[] path = new int[maxReuseDepth];
+        // Queue of candidate nodes, each with the index of its parent's entry, or -1 for the last chosen node, and its depth
+        int[] queueNodes = new int[64];
+        int[] queueParents = new int[64];
+        int[] queueDepths = new int[64];
+        int queueSize = 0;
+        if (tree.getVisits(lastChosenNode) > 0) {
+            queueNodes[0] = lastChosenNode;
+            queueParents[0] = -1;
+            queueDepths[0] = 1;
+            queueSize = 1;
+        }
+        for (int entry = 0; entry < queueSize; entry++) {
+            int node = queueNodes[entry];
+            int depth = queueDepths[entry];
+            if (!tree.isChanceNode(node)) {
+                // Make the state of the node, check it, and unmake it
+                int e = entry;
+                for (int i = depth - 1; i >= 0; i--, e = queueParents[e]) {
+                    path[i] = queueNodes[e];
+                }
+                int numTaken = 0;
+                for (int i = 0; i < depth; i++) {
+                    if (tree.isChanceNode(path[i])) {
+                        continue; // taken with the outcome of its child
+                    }
+                    if (numTaken == undoRecords.size()) {
+                        undoRecords.add(new SPUndoRecord());
+                    }
+                    SPUndoRecord undo = undoRecords.get(numTaken++);
+                    state.generateMoves(moves);
+                    if (i > 0 && tree.isChanceNode(path[i - 1])) {
+                        state.decodeMove(moves[tree.getAction(path[i - 1])]).take(state, tree.getOutcome(path[i]), undo);
+                    }
+                    else {
+                        state.decodeMove(moves[tree.getAction(path[i])]).take(undo);
+                    }
+                }
+                boolean matches = SPStateKey.hash(state) == targetKey.getKey() && targetKey.equals(new SPStateKey(state))
+                        && sameCardOrder(state, target);
+                boolean pruned = state.isGameOver() || isPast(state, target);
+                for (int i = numTaken - 1; i >= 0; i--) {
+                    undoRecords.get(i).restore(state);
+                }
+                if (matches) {
+                    return node;
+                }
+                if (pruned) {
+                    continue;
+                }
+            }
+            if (depth == maxReuseDepth) {
+                continue;
+            }
+            // Enqueue the visited children, which are linked as siblings for a chance node
+            for (int child = tree.getFirstChild(node); child != SPMCTSTree.NONE; child = tree.getNextSibling(child)) {
+                if (tree.getVisits(child) > 0) {
+                    if (queueSize == queueNodes.length) {
+                        queueNodes = Arrays.copyOf(queueNodes, 2 * queueSize);
+                        queueParents = Arrays.copyOf(queueParents, 2 * queueSize);
+                        queueDepths = Arrays.copyOf(queueDepths, 2 * queueSize);
+                    }
+                    queueNodes[queueSize] = child;
+                    queueParents[queueSize] = entry;
+                    queueDepths[queueSize++] = depth + 1;
+                }
+            }
+        }
+        return SPMCTSTree.NONE;
+    }
 
-        // Create a random permutation of the action indices
-        // in int array actionIndices
-        int numLegalActions = legalActions.size();
-        int[] actionIndices = new int[numLegalActions];
-        for (int i = 0; i < numLegalActions; i++) {
-            actionIndices[i] = i;
+    // Whether the state is past the target, so that no later state can be the target: rounds only advance, decks only
+    // shrink, and points only grow until the game ends
+    private static boolean isPast(SPState state, SPState target) {
+        if (state.round > target.round) {
+            return true;
         }
-        // Fisher-Yates shuffle (really Durstenfeld's shuffle 1964
-        // and later Knuth shuffle 1969)
-        for (int i = numLegalActions - 1; i > 0; i--) {
-            int j = (int) (Math.random() * (i + 1));
-            int temp = actionIndices[i];
-            actionIndices[i] = actionIndices[j];
-            actionIndices[j] = temp;
+        for (int deck = 0; deck < SPState.NUM_DECKS; deck++) {
+            if (state.getZone(deck).size() < target.getZone(deck).size()) {
+                return true;
+            }
+        }
+        for (int player = 0; player < state.numPlayers; player++) {
+            if (state.playerPoints[player] > target.playerPoints[player]) {
+                return true;
+            }
         }
+        return false;
+    }
 
-        for (int a : actionIndices) {
+    // Whether the hands, market rows and holdings of two states hold their cards in the same order
+    private static boolean sameCardOrder(SPState state, SPState other) {
+        for (int zone = SPState.UPPER_ROW_ZONE; zone < state.getNumZones(); zone++) {
+            if (zone != SPState.DISCARD_ZONE && !state.getZone(zone).equals(other.getZone(zone))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Set the returns of a two-player game from the win probability of the player to move in the state
+    private static void setReturns(double[] returns, SPState state, double winProb) {
+        returns[state.playerTurn] = winProb;
+        returns[1 - state.playerTurn] = 1.0 - winProb;
+    }
+
+    // Note an action about to be taken on the search state and return the undo record for its ply
+    private SPUndoRecord undoRecord(List<SPAction> takenActions, List<SPUndoRecord> undoRecords, SPAction action) {
+        if (takenActions.size() == undoRecords.size()) {
+            undoRecords.add(new SPUndoRecord());
+        }
+        takenActions.add(action);
+        return undoRecords.get(takenActions.size() - 1);
+    }
+
+    // Root parallelization (see SPRootParallelSearch)
+    private int rootParallelAction(SPState state) {
+        if (rootSearch == null) {
+            rootSearch = new SPRootParallelSearch<>(this);
+        }
+        long deadlineMillis = System.currentTimeMillis() + turnSearchTimeMillis(state);
+        int bestAction = rootSearch.chooseAction(state, numThreads, deadlineMillis, verbose);
+        // Each tree continues from the chosen action at the next decision
+        for (int w = 0; w < numThreads; w++) {
+            SPMCTSPlayer searcher = rootSearch.getSearcher(w);
+            searcher.lastRootState = state.clone();
+            searcher.lastChosenNode = searcher.tree.findChild(rootSearch.getRoot(w), bestAction);
+        }
+        return bestAction;
+    }
+
+    // A searcher for another root tree: a copy of this player sharing its (read-only) evaluation features, with a tree
+    // of its own
+    @Override
+    public SPMCTSPlayer newRootWorker() {
+        try {
+            SPMCTSPlayer worker = (SPMCTSPlayer) clone();
+            worker.verbose = false;
+            worker.numThreads = 1;
+            worker.tree = new SPMCTSTree();
+            worker.rootSearch = null;
+            return worker;
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(); // Can't happen
+        }
+    }
+
+    // Update a root worker with search settings changed since it was created
+    @Override
+    public void copySettingsTo(SPMCTSPlayer worker) {
+        worker.uctC = uctC;
+        worker.numChanceSamples = numChanceSamples;
+        worker.numIterations = numIterations;
+        worker.playoutTerminationDepth = playoutTerminationDepth;
+        worker.compactPlayouts = compactPlayouts;
+        worker.leafBatchSize = leafBatchSize;
+        worker.batchEvaluator = batchEvaluator;
+        worker.reuseTree = reuseTree;
+        worker.maxReuseDepth = maxReuseDepth;
+    }
+
+    @Override
+    public SPMCTSTree getTree() {
+        return tree;
+    }
+
+    public void expand(int node, SPState state) {
+        // Assumes state is non-terminal, non-chance
+        // For each non-chance action, add a child node.
+        // For each chance action, add a chance node, whose children
+        //   are added as its outcomes are drawn (see outcomeChild).
+
+        ArrayList<SPAction> legalActions = state.getLegalActions();
+        int numLegalActions = legalActions.size();
+        int firstChild = tree.addChildren(node, numLegalActions);
+        nodes += numLegalActions;
+        int player = state.playerTurn;
+        for (int a = 0; a < numLegalActions; a++) {
             SPAction action = legalActions.get(a);
-            int player = state.playerTurn;
             if (action.isChanceAction()) {
-                // Create chance-sampling node
-                int chanceSeed = -(chanceSeedRng.nextInt(Integer.MAX_VALUE - numChanceSamples) + numChanceSamples);
-                SearchNode chanceNode = new SearchNode(a, chanceSeed);
-                node.children.add(chanceNode);
-                nodes++;
-
-                // Create children for each chance outcome
-                for (int sample = 0; sample < numChanceSamples; sample++) {
-                    SearchNode childNode = new SearchNode(a, player);
-                    chanceNode.children.add(childNode);
-                    nodes++;
-                }
+                // Chance node
+                tree.setNode(firstChild + a, a, SPMCTSTree.CHANCE);
             } else {
                 // Non-chance action node
-                SearchNode childNode = new SearchNode(a, player);
-                node.children.add(childNode);
-                nodes++;
+                tree.setNode(firstChild + a, a, player);
             }
         }
 
-        
+        // Shuffle the children into a random order
+        // Fisher-Yates shuffle (really Durstenfeld's shuffle 1964
+        // and later Knuth shuffle 1969)
+        for (int i = numLegalActions - 1; i > 0; i--) {
+            int j = ThreadLocalRandom.current().nextInt(i + 1);
+            tree.swapNodes(firstChild + i, firstChild + j);
+        }
+    }
+
+    // The child of a chance node for an outcome of its action sampled from the true distribution, added if the outcome
+    // is new, so that draws of the same cards share one child.  Once the node has numChanceSamples children (market
+    // refills have too many outcomes to keep them all), a new outcome is replaced by one of the children, chosen in
+    // proportion to the probabilities of their outcomes.  The outcome is sampled into the search's reusable sample and
+    // becomes an SPChanceOutcome only for a new child.
+    private int outcomeChild(int chanceNode, SPAction chanceAction, int player, SPChanceOutcome.Sample sample) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        chanceAction.sampleChanceOutcome(random, sample);
+        int child = tree.findOutcomeChild(chanceNode, sample);
+        if (child != SPMCTSTree.NONE) {
+            return child;
+        }
+        if (tree.getNumChildren(chanceNode) < numChanceSamples) {
+            nodes++;
+            return tree.addOutcomeChild(chanceNode, sample.toOutcome(), player);
+        }
+        double totalProbability = 0.0;
+        for (child = tree.getFirstChild(chanceNode); child != SPMCTSTree.NONE; child = tree.getNextSibling(child)) {
+            totalProbability += tree.getOutcome(child).probability;
+        }
+        double pick = random.nextDouble() * totalProbability;
+        int last = SPMCTSTree.NONE;
+        for (child = tree.getFirstChild(chanceNode); child != SPMCTSTree.NONE; child = tree.getNextSibling(child)) {
+            pick -= tree.getOutcome(child).probability;
+            if (pick < 0.0) {
+                return child;
+            }
+            last = child;
+        }
+        return last; // rounding
     }
 
 
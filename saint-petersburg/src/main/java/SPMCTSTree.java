@@ -0,0 +1,335 @@
+import java.util.Arrays;
+
+/* SPMCTSTree - MCTS search tree stored in parallel primitive arrays, for the MCTS players.
+ * A node is an int index; its visits, reward sum, action index and player are array elements, and the children that
+ * addChildren() adds occupy one contiguous block of indices starting at getFirstChild(node).
+ * Arrays grow by doubling and are kept across clear(), so a search allocates nothing per iteration once they are large
+ * enough.  A negative player marks a chance node.  SPMCTSPlayer gives its chance nodes the player CHANCE and adds one
+ * child per distinct outcome as outcomes are drawn, keyed by the SPChanceOutcome, with addOutcomeChild(); the AIDan
+ * players instead keep a negative sampling seed there with a contiguous block of seeded sample children.
+ * Children are also linked through getNextSibling(), since outcome children are not contiguous, and the methods here
+ * that look at all children of a node follow the sibling links.
+ */
+public final class SPMCTSTree {
+
+	public static final int NONE = -1; // Index for "no node"
+	public static final int CHANCE = -1; // Player of a chance node whose children are keyed by outcome
+
+	private int size = 0;
+	private int[] visits;
+	private double[] rewards;
+	private int[] actions; // action index taken to get to the node
+	private int[] players; // player that acted to get to the node; negative for a chance node: CHANCE, or a sampling seed
+	private int[] firstChild;
+	private int[] numChildren;
+	private int[] nextSibling;
+	private SPChanceOutcome[] outcomes; // chance outcome leading to the node, for children added by addOutcomeChild()
+	// Spare arrays of the same capacity that retainSubtree() copies into, and its old index of each new node
+	private int[] spareVisits, spareActions, sparePlayers, spareFirstChild, spareNumChildren, spareNextSibling, oldNodes;
+	private double[] spareRewards;
+	private SPChanceOutcome[] spareOutcomes;
+
+	public SPMCTSTree() {
+		this(1024);
+	}
+
+	public SPMCTSTree(int initialCapacity) {
+		visits = new int[initialCapacity];
+		rewards = new double[initialCapacity];
+		actions = new int[initialCapacity];
+		players = new int[initialCapacity];
+		firstChild = new int[initialCapacity];
+		numChildren = new int[initialCapacity];
+		nextSibling = new int[initialCapacity];
+		outcomes = new SPChanceOutcome[initialCapacity];
+	}
+
+	// Remove all nodes, keeping the allocated arrays
+	public void clear() {
+		size = 0;
+	}
+
+	// The number of nodes
+	public int size() {
+		return size;
+	}
+
+	// Clear the tree and add a root node for the given player to act, returning its index
+	public int newRoot(int player) {
+		clear();
+		return addNodes(1, player);
+	}
+
+	// Add count children to an unexpanded node, returning the index of the first; children have action 0 and player 0
+	public int addChildren(int node, int count) {
+		int first = addNodes(count, 0);
+		firstChild[node] = first;
+		numChildren[node] = count;
+		nextSibling[first + count - 1] = NONE;
+		return first;
+	}
+
+	// Add a child for a chance outcome to a chance node, with the node's action and the player that chose it, returning
+	// the child.  Such children are not contiguous, so they are visited through getNextSibling().
+	public int addOutcomeChild(int node, SPChanceOutcome outcome, int player) {
+		int child = addNodes(1, player);
+		actions[child] = actions[node];
+		outcomes[child] = outcome;
+		nextSibling[child] = firstChild[node];
+		firstChild[node] = child;
+		numChildren[node]++;
+		return child;
+	}
+
+	// The child of a chance node for the given outcome, or NONE
+	public int findOutcomeChild(int node, SPChanceOutcome outcome) {
+		for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+			if (outcome.equals(outcomes[child])) {
+				return child;
+			}
+		}
+		return NONE;
+	}
+
+	// The child of a chance node for the sampled outcome, or NONE
+	public int findOutcomeChild(int node, SPChanceOutcome.Sample sample) {
+		for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+			if (outcomes[child] != null && sample.matches(outcomes[child])) {
+				return child;
+			}
+		}
+		return NONE;
+	}
+
+	private int addNodes(int count, int player) {
+		if (size + count > visits.length) {
+			int capacity = Math.max(2 * visits.length, size + count);
+			visits = Arrays.copyOf(visits, capacity);
+			rewards = Arrays.copyOf(rewards, capacity);
+			actions = Arrays.copyOf(actions, capacity);
+			players = Arrays.copyOf(players, capacity);
+			firstChild = Arrays.copyOf(firstChild, capacity);
+			numChildren = Arrays.copyOf(numChildren, capacity);
+			nextSibling = Arrays.copyOf(nextSibling, capacity);
+			outcomes = Arrays.copyOf(outcomes, capacity);
+		}
+		int first = size;
+		size += count;
+		Arrays.fill(visits, first, size, 0);
+		Arrays.fill(rewards, first, size, 0.0);
+		Arrays.fill(actions, first, size, 0);
+		Arrays.fill(players, first, size, player);
+		Arrays.fill(firstChild, first, size, NONE);
+		Arrays.fill(numChildren, first, size, 0);
+		for (int node = first; node < size; node++) {
+			nextSibling[node] = node + 1;
+		}
+		Arrays.fill(outcomes, first, size, null);
+		return first;
+	}
+
+	// Keep only the subtree of the given node with its statistics, making the node the root, and discard the rest.
+	// Nodes are renumbered breadth-first, so the new root is node 0 and the children of each node become contiguous.
+	// The subtree is copied into a spare set of arrays, which is then swapped with the current one, so the arrays are
+	// reallocated only after they have grown.
+	public int retainSubtree(int node) {
+		int capacity = visits.length;
+		if (spareVisits == null || spareVisits.length != capacity) {
+			spareVisits = new int[capacity];
+			spareRewards = new double[capacity];
+			spareActions = new int[capacity];
+			sparePlayers = new int[capacity];
+			spareFirstChild = new int[capacity];
+			spareNumChildren = new int[capacity];
+			spareNextSibling = new int[capacity];
+			spareOutcomes = new SPChanceOutcome[capacity];
+			oldNodes = new int[capacity];
+		}
+		oldNodes[0] = node; // old index of each new node
+		int newSize = 1;
+		spareNextSibling[0] = NONE;
+		for (int i = 0; i < newSize; i++) {
+			int old = oldNodes[i];
+			spareVisits[i] = visits[old];
+			spareRewards[i] = rewards[old];
+			spareActions[i] = actions[old];
+			sparePlayers[i] = players[old];
+			spareOutcomes[i] = outcomes[old];
+			spareNumChildren[i] = numChildren[old];
+			spareFirstChild[i] = numChildren[old] > 0 ? newSize : NONE;
+			for (int child = firstChild[old]; child != NONE; child = nextSibling[child]) {
+				spareNextSibling[newSize] = newSize + 1;
+				oldNodes[newSize++] = child;
+			}
+			if (numChildren[old] > 0) {
+				spareNextSibling[newSize - 1] = NONE;
+			}
+		}
+		Arrays.fill(outcomes, 0, size, null); // the discarded nodes' outcomes can be collected
+		int[] intArray = visits;
+		visits = spareVisits;
+		spareVisits = intArray;
+		double[] doubleArray = rewards;
+		rewards = spareRewards;
+		spareRewards = doubleArray;
+		intArray = actions;
+		actions = spareActions;
+		spareActions = intArray;
+		intArray = players;
+		players = sparePlayers;
+		sparePlayers = intArray;
+		intArray = firstChild;
+		firstChild = spareFirstChild;
+		spareFirstChild = intArray;
+		intArray = numChildren;
+		numChildren = spareNumChildren;
+		spareNumChildren = intArray;
+		intArray = nextSibling;
+		nextSibling = spareNextSibling;
+		spareNextSibling = intArray;
+		SPChanceOutcome[] outcomeArray = outcomes;
+		outcomes = spareOutcomes;
+		spareOutcomes = outcomeArray;
+		size = newSize;
+		return 0;
+	}
+
+	public void setNode(int node, int action, int player) {
+		actions[node] = action;
+		players[node] = player;
+	}
+
+	public int getVisits(int node) {
+		return visits[node];
+	}
+
+	public double getReward(int node) {
+		return rewards[node];
+	}
+
+	public int getAction(int node) {
+		return actions[node];
+	}
+
+	public int getPlayer(int node) {
+		return players[node];
+	}
+
+	public int getFirstChild(int node) {
+		return firstChild[node];
+	}
+
+	public int getNumChildren(int node) {
+		return numChildren[node];
+	}
+
+	// The next child of the same parent, or NONE
+	public int getNextSibling(int node) {
+		return nextSibling[node];
+	}
+
+	// The chance outcome leading to a child added by addOutcomeChild(), or null
+	public SPChanceOutcome getOutcome(int node) {
+		return outcomes[node];
+	}
+
+	public boolean isExpanded(int node) {
+		return numChildren[node] > 0;
+	}
+
+	public boolean isChanceNode(int node) {
+		return players[node] < 0;
+	}
+
+	// Count a visit of the node with the given reward
+	public void update(int node, double reward) {
+		visits[node]++;
+		rewards[node] += reward;
+	}
+
+	// Count a visit of the node whose reward is added later, a virtual loss until then
+	public void addVisit(int node) {
+		visits[node]++;
+	}
+
+	public void addReward(int node, double reward) {
+		rewards[node] += reward;
+	}
+
+	// Swap the actions and players of two unvisited sibling nodes, e.g. to shuffle children right after adding them
+	public void swapNodes(int node, int other) {
+		int action = actions[node];
+		actions[node] = actions[other];
+		actions[other] = action;
+		int player = players[node];
+		players[node] = players[other];
+		players[other] = player;
+	}
+
+	public double uctValue(int node, double logParentVisits, double uctC) {
+		if (visits[node] == 0) {
+			return Double.POSITIVE_INFINITY; // prioritize unvisited nodes
+		}
+		return rewards[node] / visits[node] + uctC * Math.sqrt(logParentVisits / visits[node]);
+	}
+
+	// The child with the highest UCT value, the first one on ties (so the first unvisited child), or NONE
+	public int bestChildUCT(int node, double uctC) {
+		int best = NONE;
+		double bestValue = Double.NEGATIVE_INFINITY;
+		double logParentVisits = Math.log(visits[node]);
+		for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+			if (visits[child] == 0) {
+				return child;
+			}
+			double value = uctValue(child, logParentVisits, uctC);
+			if (best == NONE || value > bestValue) {
+				best = child;
+				bestValue = value;
+			}
+		}
+		return best;
+	}
+
+	// The child for the given action, or NONE
+	public int findChild(int node, int action) {
+		for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+			if (actions[child] == action) {
+				return child;
+			}
+		}
+		return NONE;
+	}
+
+	// The most visited child, the first one on ties, or NONE
+	public int bestChildByVisits(int node) {
+		int best = NONE;
+		for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+			if (best == NONE || visits[child] > visits[best]) {
+				best = child;
+			}
+		}
+		return best;
+	}
+
+	public String toString(int node) {
+		return String.format("%d: Player: %d, Visits: %d, Total Reward: %f, Q: %.2f, Children: %d",
+				actions[node], players[node], visits[node], rewards[node],
+				(visits[node] == 0 ? 0.0 : rewards[node] / visits[node]), numChildren[node]);
+	}
+
+	// The children of the node, one per line, in descending order of UCT value
+	public String childrenString(int node, double uctC) {
+		double logParentVisits = Math.log(visits[node]);
+		Integer[] children = new Integer[numChildren[node]];
+		for (int i = 0, child = firstChild[node]; child != NONE; i++, child = nextSibling[child]) {
+			children[i] = child;
+		}
+		Arrays.sort(children, (a, b) -> Double.compare(uctValue(b, logParentVisits, uctC), uctValue(a, logParentVisits, uctC)));
+		StringBuilder sb = new StringBuilder();
+		for (int child : children) {
+			sb.append(toString(child)).append('\n');
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,67 @@
+/* SPMove - Packed int encoding of Saint Petersburg moves for allocation-free move generation.
+ * SPState.generateMoves() writes moves into a caller-owned int buffer in the same order as getLegalActions(),
+ * and SPState.decodeMove() produces the corresponding SPAction only when one is needed.
+ *
+ * Bit layout: kind (bits 0-2), source (bits 3-4), index (bits 5-9), replaced card id + 1 (bits 10-16), cost (bits 17-23).
+ * The index is the position of the card in its source zone, the deck for observe moves, or the points for pub moves.
+ */
+public final class SPMove {
+
+	// Move kinds
+	public static final int PASS = 0;
+	public static final int BUY = 1;
+	public static final int ADD_TO_HAND = 2;
+	public static final int DISCARD = 3;
+	public static final int OBSERVE = 4;
+	public static final int PUB_POINTS = 5;
+
+	// Card sources for buy and add-to-hand moves
+	public static final int HAND = 0;
+	public static final int UPPER_ROW = 1;
+	public static final int LOWER_ROW = 2;
+	public static final int OBSERVED = 3;
+
+	private static final int SOURCE_SHIFT = 3;
+	private static final int INDEX_SHIFT = 5;
+	private static final int REPLACED_SHIFT = 10;
+	private static final int COST_SHIFT = 17;
+
+	private SPMove() {
+	}
+
+	public static int pack(int kind, int source, int index, SPCard replacedCard, int cost) {
+		return pack(kind, source, index, replacedCard == null ? -1 : replacedCard.id, cost);
+	}
+
+	// Pack a move with the replaced card given by id, -1 for none
+	static int pack(int kind, int source, int index, int replacedId, int cost) {
+		return kind | source << SOURCE_SHIFT | index << INDEX_SHIFT | (replacedId + 1) << REPLACED_SHIFT | cost << COST_SHIFT;
+	}
+
+	public static int kind(int move) {
+		return move & 0x7;
+	}
+
+	public static int source(int move) {
+		return (move >>> SOURCE_SHIFT) & 0x3;
+	}
+
+	public static int index(int move) {
+		return (move >>> INDEX_SHIFT) & 0x1F;
+	}
+
+	// The replaced card of a trading card buy, or null
+	public static SPCard replacedCard(int move) {
+		int replaced = (move >>> REPLACED_SHIFT) & 0x7F;
+		return replaced == 0 ? null : SPCard.ALL_CARDS.get(replaced - 1);
+	}
+
+	// The id of the replaced card of a trading card buy, or -1
+	static int replacedId(int move) {
+		return ((move >>> REPLACED_SHIFT) & 0x7F) - 1;
+	}
+
+	public static int cost(int move) {
+		return (move >>> COST_SHIFT) & 0x7F;
+	}
+}
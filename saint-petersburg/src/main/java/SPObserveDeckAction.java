@@ -1,4 +1,3 @@
-import java.util.ArrayList;
 /* Models a choice to use an observatory to draw a random card from a given deck with more than one card. */
 public class SPObserveDeckAction extends SPAction implements SPPossibleChanceAction {
 
@@ -10,29 +9,14 @@ public class SPObserveDeckAction extends SPAction implements SPPossibleChanceAct
 	}
 	
 	@Override
-	public SPState take(SPState state) {
+	protected SPState apply(SPState state, SPDrawPolicy draws, SPUndoRecord undo) {
 		// Player did not pass
 		state.playerPassed[player] = false;
-		ArrayList<SPCard> deck = null;
-		switch (deckIndex) {
-			case 0: // Worker Deck
-				deck = state.workerDeck;
-				break;
-			case 1: // Building Deck
-				deck = state.buildingDeck;
-				break;
-			case 2: // Aristocrat Deck
-				deck = state.aristocratDeck;
-				break;
-			case 3: // Trading Deck
-				deck = state.tradingDeck;
-				break;
-		}
-		if (deck == null) {
+		if (deckIndex < 0 || deckIndex >= SPState.NUM_DECKS) {
 			throw new IllegalArgumentException("Invalid deck index: " + deckIndex);
 		}
-		// Observe the top card of the selected deck
-		state.observedCard = drawRandomCard(deck);
+		// Observe the top card of the selected deck (deck zone indices are the deck indices)
+		state.observedCard = drawRandomCard(state, deckIndex, draws, undo);
 		state.usedObservatories[state.playerTurn]++; // Increment the number of observatories used by the player
 		return state;
 	}
@@ -46,6 +30,16 @@ public class SPObserveDeckAction extends SPAction implements SPPossibleChanceAct
 		return String.format("Player %d observes %s.", player + 1, deckNames[deckIndex]);
 	}
 
+	@Override
+	protected int getChanceDeck() {
+		return deckIndex;
+	}
+
+	@Override
+	protected int getNumChanceDraws() {
+		return 1;
+	}
+
 	public boolean isChanceAction() {
 		return true; // since it is illegal to observe the last card in a deck, this is always a chance action.
 	}
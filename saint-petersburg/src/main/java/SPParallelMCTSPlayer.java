@@ -0,0 +1,283 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SPParallelMCTSPlayer extends SPPlayer { // tree-parallel version of SPMCTSPlayer
+    // All threads search one shared SPConcurrentMCTSTree.  Each thread walks its own search state down the tree as
+    // SPMCTSPlayer does, counting a virtual loss (a visit without reward) at each node on the way down so that other
+    // threads are steered onto other paths, and replaces it with the real return on the way back up.
+    // Guillaume Chaslot, Mark H.M. Winands and H. Jaap van den Herik, "Parallel Monte-Carlo Tree Search" (CG 2008)
+
+    double uctC = 2.0; // UCT exploration constant
+    int numChanceSamples = 10; // Number of chance samples per chance node
+    int numIterations = 1000000; // Number of MCTS iterations per move, over all threads
+    int playoutTerminationDepth = 4; // Depth at which to terminate playouts
+    AIDanSPStateFeaturesLR3 features = new AIDanSPStateFeaturesLR3(); // Features for heuristic evaluation
+    boolean verbose = true; // Verbosity flag
+    int numThreads = Runtime.getRuntime().availableProcessors(); // Threads searching the tree
+    int virtualLoss = 1; // Visits without reward counted at each node on the way down
+    int maxNodes = 1 << 20; // Tree capacity; leaves are no longer expanded once it is used up
+    SPConcurrentMCTSTree tree = null; // Search tree, created on first use and reused from move to move
+    // time management fields
+    private long startMs = UNKNOWN_TIME; // start time of move computation
+    int endEstimatePlayouts = 3; // number of playouts to estimate the
+    //  number of remaining decisions
+    double fOpening = 1.1; // bias towards opening move search
+    // Hendrik Baier and Mark H.M. Winands, "Time Management for Monte-Carlo
+    //   Tree Search in Go" (ACG 2013)
+
+    public SPParallelMCTSPlayer() {
+        super("SPParallelMCTSPlayer");
+    }
+
+    @Override
+    public int getAction(SPState state) {
+        startMs = System.currentTimeMillis();
+        int numLegalActions = state.getLegalActions().size();
+        int root = MCTSSearch(state);
+        int bestChild = tree.bestChildByVisits(root);
+        if (verbose) {
+            System.out.println("Number of legal actions: " + numLegalActions);
+            System.out.println("Root Node:\n" + tree.toString(root));
+            System.out.println("Selected Action: " + tree.getAction(bestChild));
+        }
+        return tree.getAction(bestChild);
+    }
+
+    // Search from the root state on numThreads threads, returning the root node of the tree
+    public int MCTSSearch(SPState rootState) {
+        long deadlineMillis = System.currentTimeMillis() + turnSearchTimeMillis(rootState);
+        if (tree == null || tree.capacity() != maxNodes) {
+            tree = new SPConcurrentMCTSTree(maxNodes);
+        }
+        int rootNode = tree.newRoot(rootState.playerTurn);
+        tree.claim(rootNode);
+        expand(rootNode, rootState);
+        startMs = System.currentTimeMillis();
+
+        AtomicInteger iterations = new AtomicInteger(); // iterations started by all threads
+        List<Callable<Void>> threadSearches = new ArrayList<>(); // searches of the threads other than this one
+        for (int t = 1; t < numThreads; t++) {
+            SPState threadState = rootState.clone(); // a state of its own, so that threads share no state
+            threadSearches.add(() -> {
+                search(threadState, rootNode, deadlineMillis, iterations);
+                return null;
+            });
+        }
+        List<ForkJoinTask<Void>> searches = SPRootParallelSearch.submitToSharedPool(threadSearches);
+        search(rootState.clone(), rootNode, deadlineMillis, iterations);
+        for (ForkJoinTask<Void> search : searches) {
+            search.join();
+        }
+
+        if (verbose) {
+            System.out.printf("MCTS completed %d iterations on %d threads in %d ms, %d nodes created.\n",
+                    tree.getVisits(rootNode), numThreads, System.currentTimeMillis() - startMs, tree.size());
+        }
+        return rootNode;
+    }
+
+    // The time to search for this move
+    private long turnSearchTimeMillis(SPState rootState) {
+        long turnSearchTimeMillis = 1000L; // default fixed time per move
+        if (timeRemainingMillis != UNKNOWN_TIME) {
+            // Estimate the number of decisions remaining (including this)
+            // For this we do a specified number of playouts, count the
+            //   current player decisions, and average.
+            double movesExpected = SPCompactState.estimateDecisionsRemaining(rootState, endEstimatePlayouts,
+                    ThreadLocalRandom.current());
+            if (verbose) { // print the estimated number of decisions remaining
+                System.out.printf("Estimated decisions remaining: %.2f\n", movesExpected);
+            }
+            // Allocate time for this move
+            turnSearchTimeMillis = (long) (fOpening * timeRemainingMillis / movesExpected);
+            // Ensure that the move time is not more than a 20th of the remaining time
+            turnSearchTimeMillis = Math.min(turnSearchTimeMillis,
+                timeRemainingMillis / 20L);
+        }
+        return turnSearchTimeMillis;
+    }
+
+    // One thread's share of the search: iterate until the deadline or until all threads together have started
+    // numIterations iterations, from a copy of the root state that is the thread's own
+    private void search(SPState state, int rootNode, long deadlineMillis, AtomicInteger iterations) {
+        // Define variables to support periodic checking of the clock
+        int numBlockIterations = 100; // check time every 100 iterations
+        long lastIterationBlockMillis = UNKNOWN_TIME; // time since last check
+        long blockStartMillis = System.currentTimeMillis();
+
+        int[] path = new int[64]; // sequence of nodes visited, grown as needed
+        int pathLength = 0;
+        state.skipForcedMoves = true; // no tree nodes or playout steps for forced moves
+        List<SPAction> takenActions = new ArrayList<>(); // actions taken this iteration
+        List<SPUndoRecord> undoRecords = new ArrayList<>(); // reusable, one per ply
+        int[] moves = new int[SPState.MAX_LEGAL_ACTIONS]; // reusable packed move buffer
+        double[] returns = new double[state.numPlayers]; // returns of the current iteration
+        for (int iter = 0; iterations.getAndIncrement() < numIterations; iter++) { // MCTS loop
+            // Check elapsed time every numBlockIterations of this thread
+            if ((iter + 1) % numBlockIterations == 0) {
+                long currentMillis = System.currentTimeMillis();
+                lastIterationBlockMillis = currentMillis - blockStartMillis;
+                // If another block of the same duration would pass
+                // the deadline, break
+                if (currentMillis + lastIterationBlockMillis > deadlineMillis) {
+                    break;
+                }
+                blockStartMillis = currentMillis;
+            }
+
+            pathLength = 0;
+            takenActions.clear();
+            int node = rootNode;
+
+            // Selection/Expansion phase (TREE_POLICY), as in SPMCTSPlayer, adding a virtual loss to each node visited.
+            // A node that another thread is expanding is a leaf for this iteration.
+            while (!state.isGameOver()) {
+                if (pathLength + 2 > path.length) {
+                    path = Arrays.copyOf(path, 2 * path.length);
+                }
+                path[pathLength++] = node;
+                tree.addVisits(node, virtualLoss);
+                if (!tree.isExpanded(node)) {
+                    if (tree.claim(node)) {
+                        expand(node, state); // expand and break
+                    }
+                    break;
+                }
+                // Node is expanded; select best child by UCT
+                int nextNode = tree.bestChildUCT(node, uctC);
+                if (tree.isChanceNode(nextNode)) {
+                    path[pathLength++] = nextNode; // add chance node to path
+                    tree.addVisits(nextNode, virtualLoss);
+                    // Chance node: reproduce one of the sampled outcomes
+                    state.generateMoves(moves);
+                    SPAction chanceAction = state.decodeMove(moves[tree.getAction(nextNode)]);
+                    int sampleIndex = ThreadLocalRandom.current().nextInt(numChanceSamples);
+                    int sampleSeed = tree.getPlayer(nextNode) + sampleIndex;
+                    chanceAction.take(sampleSeed, undoRecord(takenActions, undoRecords, chanceAction));
+                    node = tree.getFirstChild(nextNode) + sampleIndex;
+                } else {
+                    // Non-chance action node
+                    state.generateMoves(moves);
+                    SPAction action = state.decodeMove(moves[tree.getAction(nextNode)]);
+                    action.take(undoRecord(takenActions, undoRecords, action));
+                    node = nextNode;
+                }
+            }
+
+            // Simulation phase (DEFAULT_POLICY) and Evaluation
+            // Early playout termination (EPT) after a fixed depth
+            int stepsRemaining = playoutTerminationDepth;
+            while (!state.isGameOver() && stepsRemaining > 0) {
+                SPAction action = state.sampleRandomLegalAction(ThreadLocalRandom.current());
+                action.take(undoRecord(takenActions, undoRecords, action));
+                stepsRemaining--;
+            }
+
+            // Evaluate the (possibly non-terminal) state
+            if (state.isGameOver()) {
+                // Terminal state: use actual returns
+                for (int i = 0; i < state.numPlayers; i++) {
+                    returns[i] = state.isWinner[i] ? 1.0 : 0.0;
+                }
+            } else {
+                // Non-terminal state: use heuristic evaluation
+                double winProb = features.predict(state);
+                returns[state.playerTurn] = winProb;
+                returns[1 - state.playerTurn] = 1.0 - winProb;
+            }
+
+            // Walk the search state back up to the root
+            for (int i = takenActions.size() - 1; i >= 0; i--) {
+                takenActions.get(i).undo(state, undoRecords.get(i));
+            }
+
+            // Backpropagation phase (BACKUP): the virtual loss visits become one real visit with the return
+            for (int i = pathLength - 1; i >= 0; i--) {
+                int n = path[i];
+                // The acting player of a chance node is in its sample children
+                int actingPlayer = tree.getPlayer(tree.isChanceNode(n) ? tree.getFirstChild(n) : n);
+                tree.addReward(n, returns[actingPlayer]);
+                if (virtualLoss != 1) {
+                    tree.addVisits(n, 1 - virtualLoss);
+                }
+            }
+        }
+    }
+
+    // Note an action about to be taken on the search state and return the undo record for its ply
+    private SPUndoRecord undoRecord(List<SPAction> takenActions, List<SPUndoRecord> undoRecords, SPAction action) {
+        if (takenActions.size() == undoRecords.size()) {
+            undoRecords.add(new SPUndoRecord());
+        }
+        takenActions.add(action);
+        return undoRecords.get(takenActions.size() - 1);
+    }
+
+    // Expand a node claimed by the calling thread, as SPMCTSPlayer.expand() does, publishing its children when they are
+    // complete.  If the tree is full, the node stays a leaf.
+    private void expand(int node, SPState state) {
+        ArrayList<SPAction> legalActions = state.getLegalActions();
+        int numLegalActions = legalActions.size();
+        int player = state.playerTurn;
+        int firstChild = tree.addChildren(node, numLegalActions, player);
+        if (firstChild == SPConcurrentMCTSTree.NONE) {
+            return;
+        }
+        for (int a = 0; a < numLegalActions; a++) {
+            if (legalActions.get(a).isChanceAction()) {
+                // Create chance-sampling node with a negative seed
+                int chanceSeed = -(ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE - numChanceSamples) + numChanceSamples);
+                tree.setNode(firstChild + a, a, chanceSeed);
+            } else {
+                tree.setNode(firstChild + a, a, player);
+            }
+        }
+
+        // Shuffle the children into a random order
+        for (int i = numLegalActions - 1; i > 0; i--) {
+            tree.swapNodes(firstChild + i, firstChild + ThreadLocalRandom.current().nextInt(i + 1));
+        }
+
+        // Create children for each chance outcome
+        for (int child = firstChild; child < firstChild + numLegalActions; child++) {
+            if (tree.isChanceNode(child)) {
+                int firstSample = tree.addChildren(child, numChanceSamples, player);
+                if (firstSample == SPConcurrentMCTSTree.NONE) {
+                    return;
+                }
+                for (int sample = 0; sample < numChanceSamples; sample++) {
+                    tree.setNode(firstSample + sample, tree.getAction(child), player);
+                }
+                tree.publish(child, numChanceSamples);
+            }
+        }
+        tree.publish(node, numLegalActions);
+    }
+
+    public static void main(String[] args) {
+        // Measure how search speed scales with the number of threads, searching the opening position for the default
+        // time per move at each thread count
+        SPParallelMCTSPlayer player = new SPParallelMCTSPlayer();
+        player.verbose = false;
+        SPState state = new SPState();
+        player.numThreads = 1;
+        player.MCTSSearch(state); // warm up
+        double baseRate = 0.0;
+        for (int threads = 1; threads <= 32; threads *= 2) {
+            player.numThreads = threads;
+            long startNanos = System.nanoTime();
+            int root = player.MCTSSearch(state);
+            double rate = player.tree.getVisits(root) / ((System.nanoTime() - startNanos) / 1e9);
+            if (threads == 1) {
+                baseRate = rate;
+            }
+            System.out.printf("%2d threads: %9.0f iterations/s, speedup %5.2f, %d nodes\n",
+                    threads, rate, rate / baseRate, player.tree.size());
+        }
+    }
+}
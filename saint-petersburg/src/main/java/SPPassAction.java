@@ -1,6 +1,4 @@
 import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Set;
 
 public class SPPassAction extends SPAction implements SPPossibleChanceAction {
 
@@ -9,7 +7,7 @@ public class SPPassAction extends SPAction implements SPPossibleChanceAction {
 	}
 
 	@Override
-	public SPState take(SPState state) {
+	protected SPState apply(SPState state, SPDrawPolicy draws, SPUndoRecord undo) {
 		state.playerPassed[player] = true; // mark player as having passed
 
 		// Check for end of phase
@@ -28,38 +26,27 @@ public class SPPassAction extends SPAction implements SPPossibleChanceAction {
 			if (state.phase == SPState.WORKER) { // End of worker phase
 				// Gain rubles and points for each worker
 				for (int i = 0; i < state.numPlayers; i++) {
-					for (SPCard card : state.playerWorkers.get(i)) {
-						state.playerRubles[i] += card.rubles;
-						state.playerPoints[i] += card.points;
-					}
+					state.playerRubles[i] += state.playerRublesPerPhase[i][SPState.WORKER];
+					state.playerPoints[i] += state.playerPointsPerPhase[i][SPState.WORKER];
 				}
 				state.phase = SPState.BUILDING; // move to building phase
-				refillTopRow(state.buildingDeck); // refill upper card row with buildings
+				refillTopRow(state, SPState.BUILDING, draws, undo); // refill upper card row with buildings
 				state.playerTurn = state.startingPlayer[state.phase]; // reset player turn to starting player for building phase
 			}
 			else if (state.phase == SPState.BUILDING) { // End of building phase
 				// Gain rubles and points for each building
 				boolean pubActionNext = false; // Flag to check if a Pub is present
 				for (int i = 0; i < state.numPlayers; i++) {
-					int numObservatories = 0; // Count observatories for each player
-					for (SPCard card : state.playerBuildings.get(i)) {
-						state.playerRubles[i] += card.rubles;
-						state.playerPoints[i] += card.points;
-						// If the card is an observatory, count a point if it has not been used this round.
-						if (card.name.equals("Observatory")) {
-							numObservatories++;
-						}
-						else if (card.name.startsWith("Mariinskij")) {
-							// Score one point per aristocrat card
-							state.playerPoints[i] += state.playerAristocrats.get(i).size();
-						}
-						// If the card is a Pub, there is a Pub pseudo-phase next.
-						if (card.name.equals("Pub")) {
-							pubActionNext = true;
-						}
+					state.playerRubles[i] += state.playerRublesPerPhase[i][SPState.BUILDING];
+					state.playerPoints[i] += state.playerPointsPerPhase[i][SPState.BUILDING];
+					// Score one point per aristocrat card for each Mariinskij Theater
+					state.playerPoints[i] += state.numMariinskij[i] * state.playerAristocrats.get(i).size();
+					// If the player has a Pub, there is a Pub pseudo-phase next.
+					if (state.numPubs[i] > 0) {
+						pubActionNext = true;
 					}
 					// Give a point for each observatory that has not been used this round.
-					state.playerPoints[i] += numObservatories - state.usedObservatories[i];
+					state.playerPoints[i] += state.numObservatories[i] - state.usedObservatories[i];
 					state.usedObservatories[i] = 0; // Reset observatory usage for next round
 				}
 				if (pubActionNext) {
@@ -68,7 +55,7 @@ public class SPPassAction extends SPAction implements SPPossibleChanceAction {
 					int buildingStartPlayer = state.startingPlayer[SPState.BUILDING];
 					for (int i = 0; i < state.numPlayers; i++) {
 						int playerIndex = (buildingStartPlayer + i) % state.numPlayers;
-						if (state.playerBuildings.get(playerIndex).stream().anyMatch(card -> card.name.equals("Pub"))) {
+						if (state.numPubs[playerIndex] > 0) {
 							state.playerTurn = playerIndex;
 							break;
 						}
@@ -77,24 +64,20 @@ public class SPPassAction extends SPAction implements SPPossibleChanceAction {
 				else { // No Pub, move to aristocrat phase
 					Arrays.fill(state.usedObservatories, 0); // Reset observatory usage for next round
 					state.phase = SPState.ARISTOCRAT; // move to aristocrat phase
-					refillTopRow(state.aristocratDeck); // refill upper card row with aristocrats
+					refillTopRow(state, SPState.ARISTOCRAT, draws, undo); // refill upper card row with aristocrats
 					state.playerTurn = state.startingPlayer[state.phase]; // reset player turn to starting player for aristocrat phase
 				}
 			}
 			else if (state.phase == SPState.ARISTOCRAT) { // End of aristocrat phase
 				// Gain rubles and points for each aristocrat
 				for (int i = 0; i < state.numPlayers; i++) {
-					for (SPCard card : state.playerAristocrats.get(i)) {
-						state.playerRubles[i] += card.rubles;
-						state.playerPoints[i] += card.points;
-						if (card.name.equals("Tax Man")) {
-							// Gain 1 ruble for each worker card owned by the player
-							state.playerRubles[i] += state.playerWorkers.get(i).size();
-						}
-					}
+					state.playerRubles[i] += state.playerRublesPerPhase[i][SPState.ARISTOCRAT];
+					state.playerPoints[i] += state.playerPointsPerPhase[i][SPState.ARISTOCRAT];
+					// Gain 1 ruble for each worker card owned by the player for each Tax Man
+					state.playerRubles[i] += state.numTaxMen[i] * state.playerWorkers.get(i).size();
 				}
 				state.phase = SPState.TRADING; // move to trading phase
-				refillTopRow(state.tradingDeck);
+				refillTopRow(state, SPState.TRADING, draws, undo);
 				state.playerTurn = state.startingPlayer[state.phase]; // reset player turn to starting player for trading phase
 			}
 			else if (state.phase == SPState.TRADING) { // End of trading phase
@@ -107,54 +90,44 @@ public class SPPassAction extends SPAction implements SPPossibleChanceAction {
 					gameOver = true;
 				}
 				if (gameOver) { // game over scoring and winner determination
-					state.phase = SPState.END; // move to end phase
-					// Score unique aristocrats
-					for (int i = 0; i < state.numPlayers; i++) {
-						Set<SPCard> uniqueAristocrats = new HashSet<>(state.playerAristocrats.get(i));
-						int numUniqueAristocrats = Math.min(10, uniqueAristocrats.size());
-						state.playerPoints[i] += SPState.UNIQUE_ARISTOCRAT_BONUS_POINTS.get(numUniqueAristocrats);
-					}
-					// Score remaining rubles at 1 point per 10 rubles
-					for (int i = 0; i < state.numPlayers; i++) {
-						state.playerPoints[i] += state.playerRubles[i] / 10;
-					}
-					// Subtract points for remaining cards in hand at -5 per card
-					for (int i = 0; i < state.numPlayers; i++) {
-						state.playerPoints[i] -= 5 * state.playerHands.get(i).size();
-					}
-					// Determine the winner
-					int maxPoints = Integer.MIN_VALUE;
+					// Score unique aristocrats, remaining rubles at 1 point per 10 rubles, and -5 points per card in hand
 					for (int i = 0; i < state.numPlayers; i++) {
-						if (state.playerPoints[i] > maxPoints) {
-							maxPoints = state.playerPoints[i];
-						}
+						state.playerPoints[i] = state.getProvisionalScore(i);
 					}
-					// Compute the max rubles among max points players in case of a tie
-					int maxRubles = Integer.MIN_VALUE;
-					for (int i = 0; i < state.numPlayers; i++) {
-						if (state.playerPoints[i] == maxPoints) {
-							if (state.playerRubles[i] > maxRubles) {
-								maxRubles = state.playerRubles[i];
-							}
+					state.phase = SPState.END; // move to end phase
+					// Determine the winner: most points, with ties broken by most rubles
+					int best = 0;
+					for (int i = 1; i < state.numPlayers; i++) {
+						if (state.playerPoints[i] > state.playerPoints[best]
+								|| (state.playerPoints[i] == state.playerPoints[best] && state.playerRubles[i] > state.playerRubles[best])) {
+							best = i;
 						}
 					}
 					// Mark the winners
 					for (int i = 0; i < state.numPlayers; i++) {
-						if (state.playerPoints[i] == maxPoints && state.playerRubles[i] == maxRubles) {
+						if (state.playerPoints[i] == state.playerPoints[best] && state.playerRubles[i] == state.playerRubles[best]) {
 							state.isWinner[i] = true;
 						}
-					}	
+					}
 				} // game over
 				else { // Not game over, continue to next round
 					// Discard all lower row cards
-					state.discardPile.addAll(state.lowerCardRow);
+					for (SPCard card : state.lowerCardRow) {
+						addCard(state, SPState.DISCARD_ZONE, card, undo);
+					}
 					// Clear lower row
-					state.lowerCardRow.clear();
+					while (!state.lowerCardRow.isEmpty()) {
+						removeCardAt(state, SPState.LOWER_ROW_ZONE, state.lowerCardRow.size() - 1, undo);
+					}
 					// Move all upper row cards to the lower row
-					state.lowerCardRow.addAll(state.upperCardRow);
-					state.upperCardRow.clear();
+					for (SPCard card : state.upperCardRow) {
+						addCard(state, SPState.LOWER_ROW_ZONE, card, undo);
+					}
+					while (!state.upperCardRow.isEmpty()) {
+						removeCardAt(state, SPState.UPPER_ROW_ZONE, state.upperCardRow.size() - 1, undo);
+					}
 					// Refill upper row with new cards from the decks
-					refillTopRow(state.workerDeck);
+					refillTopRow(state, SPState.WORKER, draws, undo);
 					// rotate starting players for phases clockwise
 					for (int i = 0; i < SPState.NUM_DECKS; i++) {
 						state.startingPlayer[i] = (state.startingPlayer[i] + 1) % state.numPlayers;
@@ -175,6 +148,34 @@ public class SPPassAction extends SPAction implements SPPossibleChanceAction {
 		return String.format("Player %d passes.", player + 1);
 	}
 
+	@Override
+	protected int getChanceDeck() {
+		if (!isChanceAction()) {
+			return -1;
+		}
+		switch (state.phase) {
+			case SPState.WORKER:
+				return SPState.BUILDING;
+			case SPState.BUILDING:
+				return SPState.ARISTOCRAT;
+			case SPState.ARISTOCRAT:
+				return SPState.TRADING;
+			default:
+				return SPState.WORKER; // next round
+		}
+	}
+
+	@Override
+	protected int getNumChanceDraws() {
+		int deck = getChanceDeck();
+		if (deck < 0) {
+			return 0;
+		}
+		// At the end of the trading phase the lower row is discarded and the upper row moves down before the refill
+		int marketSize = state.upperCardRow.size() + (state.phase == SPState.TRADING ? 0 : state.lowerCardRow.size());
+		return Math.min(SPState.MARKET_SIZE - marketSize, state.getZone(deck).size());
+	}
+
 	public boolean isChanceAction() {
 
 		// Check for end of phase
@@ -192,11 +193,9 @@ public class SPPassAction extends SPAction implements SPPossibleChanceAction {
 		}
 		else if (state.phase == SPState.BUILDING) { // End of building phase
 			for (int i = 0; i < state.numPlayers; i++) {
-				for (SPCard card : state.playerBuildings.get(i)) {
-					// If the card is a Pub, there is a Pub pseudo-phase next.
-					if (card.name.equals("Pub")) {
-						return false; // pub action is next
-					}
+				// If the player has a Pub, there is a Pub pseudo-phase next.
+				if (state.numPubs[i] > 0) {
+					return false; // pub action is next
 				}
 			}	
 			// No pub, check if the aristocrat deck isn't empty and the market isn't full.
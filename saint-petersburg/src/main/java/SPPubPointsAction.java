@@ -10,7 +10,7 @@ public class SPPubPointsAction extends SPAction implements SPPossibleChanceActio
 	}
 
 	@Override
-	public SPState take(SPState state) {
+	protected SPState apply(SPState state, SPDrawPolicy draws, SPUndoRecord undo) {
 		state.playerPoints[state.playerTurn] += points; // Add points to the player's score
 		state.playerRubles[state.playerTurn] -= 2 * points; // Deduct the cost of points
 
@@ -19,7 +19,7 @@ public class SPPubPointsAction extends SPAction implements SPPossibleChanceActio
 		int playerOffset = (state.playerTurn + state.numPlayers - state.startingPlayer[SPState.BUILDING]) % state.numPlayers;
 		for (int offset = playerOffset + 1; offset < state.numPlayers; offset++) {
 			int possibleNextPubPlayer = (state.startingPlayer[SPState.BUILDING] + offset) % state.numPlayers;
-			if (state.playerBuildings.get(possibleNextPubPlayer).stream().anyMatch(c -> c.name.equals("Pub"))) {
+			if (state.numPubs[possibleNextPubPlayer] > 0) {
 				hasNextPlayerWithPub = true;
 				state.playerTurn = possibleNextPubPlayer; // Set the next player with a Pub
 				break;
@@ -28,7 +28,7 @@ public class SPPubPointsAction extends SPAction implements SPPossibleChanceActio
 		if (!hasNextPlayerWithPub) { // end the phase if no other player has a Pub
 			Arrays.fill(state.usedObservatories, 0); // Reset observatory usage for next round
 			state.phase = SPState.ARISTOCRAT; // move to aristocrat phase
-			refillTopRow(state.aristocratDeck); // refill upper card row with aristocrats
+			refillTopRow(state, SPState.ARISTOCRAT, draws, undo); // refill upper card row with aristocrats
 			state.playerTurn = state.startingPlayer[state.phase]; // reset player turn to starting player for aristocrat phase
 		}
 		return state;
@@ -41,13 +41,26 @@ public class SPPubPointsAction extends SPAction implements SPPossibleChanceActio
 			: String.format("Player %d buys %d point%s for %d ruble%s with the Pub.", player + 1, points, points > 1 ? "s" : "", 2 * points, 2 * points > 1 ? "s" : "");
 	}
 
+	@Override
+	protected int getChanceDeck() {
+		return isChanceAction() ? SPState.ARISTOCRAT : -1;
+	}
+
+	@Override
+	protected int getNumChanceDraws() {
+		if (!isChanceAction()) {
+			return 0;
+		}
+		return Math.min(SPState.MARKET_SIZE - state.upperCardRow.size() - state.lowerCardRow.size(), state.aristocratDeck.size());
+	}
+
 	public boolean isChanceAction() {
 
 		// If there is another player in the phase turn order with a pub, this is not a chance action.
 		int playerOffset = (state.playerTurn + state.numPlayers - state.startingPlayer[SPState.BUILDING]) % state.numPlayers;
 		for (int offset = playerOffset + 1; offset < state.numPlayers; offset++) {
 			int possibleNextPubPlayer = (state.startingPlayer[SPState.BUILDING] + offset) % state.numPlayers;
-			if (state.playerBuildings.get(possibleNextPubPlayer).stream().anyMatch(c -> c.name.equals("Pub"))) {
+			if (state.numPubs[possibleNextPubPlayer] > 0) {
 				return false; // There is another player with a Pub, so this is not a chance action
 			}
 		}
@@ -0,0 +1,113 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/* SPRootParallelSearch - Root parallelization for the MCTS players: the player and copies of it search independent
+ * trees from the same state, each on its own thread, until one shared deadline, and the action with the most root child
+ * visits summed over the trees is chosen, ties broken by summed reward.  The copies are created as needed and kept, with
+ * their trees, from move to move.  The copies of all players search on one shared pool of daemon threads, so a player
+ * holds no threads of its own and needs no shutting down when its game ends; searches of concurrent games share them.
+ */
+final class SPRootParallelSearch<S extends SPRootParallelSearch.Searcher<S>> {
+
+	// A player that can search one of the trees
+	interface Searcher<S> {
+		// A copy of the player sharing its read-only evaluation features, with a search tree of its own, for another thread
+		S newRootWorker();
+
+		// Update a copy made by newRootWorker() with search settings changed since it was made
+		void copySettingsTo(S worker);
+
+		// Search from the state until the deadline, returning the root node in getTree()
+		int MCTSSearch(SPState rootState, long deadlineMillis);
+
+		SPMCTSTree getTree();
+	}
+
+	private static ForkJoinPool sharedPool = null; // threads shared by the searches of all players
+
+	private final S player;
+	private final List<S> searchers = new ArrayList<>(); // the player, then its copies
+	private int[] roots = new int[0]; // root node of each tree in the last search
+
+	SPRootParallelSearch(S player) {
+		this.player = player;
+		searchers.add(player);
+	}
+
+	// Submit the tasks to a pool of daemon threads shared by all players, grown to run them all at once.  A smaller pool
+	// is replaced; it finishes the tasks already submitted to it, after which its threads end.
+	static synchronized <T> List<ForkJoinTask<T>> submitToSharedPool(List<Callable<T>> tasks) {
+		if (sharedPool == null || sharedPool.getParallelism() < tasks.size()) {
+			if (sharedPool != null) {
+				sharedPool.shutdown();
+			}
+			sharedPool = new ForkJoinPool(Math.max(tasks.size(), 1));
+		}
+		List<ForkJoinTask<T>> submitted = new ArrayList<>();
+		for (Callable<T> task : tasks) {
+			submitted.add(sharedPool.submit(task));
+		}
+		return submitted;
+	}
+
+	// Search the state with numThreads trees until the deadline and return the chosen action index.  The calling thread
+	// searches the player's tree.  getSearcher() and getRoot() give each tree's searcher and root until the next search.
+	int chooseAction(SPState state, int numThreads, long deadlineMillis, boolean verbose) {
+		while (searchers.size() < numThreads) {
+			searchers.add(player.newRootWorker());
+		}
+		List<Callable<Integer>> workerSearches = new ArrayList<>();
+		for (int w = 1; w < numThreads; w++) {
+			S worker = searchers.get(w);
+			player.copySettingsTo(worker);
+			SPState workerState = state.clone(); // a state of its own, so that threads share no state
+			workerSearches.add(() -> worker.MCTSSearch(workerState, deadlineMillis));
+		}
+		List<ForkJoinTask<Integer>> searches = submitToSharedPool(workerSearches);
+		roots = new int[numThreads];
+		roots[0] = player.MCTSSearch(state, deadlineMillis);
+		for (int w = 1; w < numThreads; w++) {
+			roots[w] = searches.get(w - 1).join();
+		}
+
+		// Merge the root children of all trees by action
+		int numLegalActions = state.getLegalActions().size();
+		long[] visits = new long[numLegalActions];
+		double[] rewards = new double[numLegalActions];
+		for (int w = 0; w < numThreads; w++) {
+			SPMCTSTree tree = searchers.get(w).getTree();
+			for (int child = tree.getFirstChild(roots[w]); child != SPMCTSTree.NONE; child = tree.getNextSibling(child)) {
+				visits[tree.getAction(child)] += tree.getVisits(child);
+				rewards[tree.getAction(child)] += tree.getReward(child);
+			}
+		}
+		int bestAction = 0;
+		for (int a = 1; a < numLegalActions; a++) {
+			if (visits[a] > visits[bestAction] || (visits[a] == visits[bestAction] && rewards[a] > rewards[bestAction])) {
+				bestAction = a;
+			}
+		}
+		if (verbose) {
+			System.out.printf("Merged %d root-parallel trees:\n", numThreads);
+			for (int a = 0; a < numLegalActions; a++) {
+				System.out.printf("%d: Visits: %d, Total Reward: %f, Q: %.2f\n", a, visits[a], rewards[a],
+						(visits[a] == 0 ? 0.0 : rewards[a] / visits[a]));
+			}
+			System.out.println("Selected Action: " + bestAction);
+		}
+		return bestAction;
+	}
+
+	// The searcher of tree i of the last search, the player itself for i = 0
+	S getSearcher(int i) {
+		return searchers.get(i);
+	}
+
+	// The root node of tree i of the last search
+	int getRoot(int i) {
+		return roots[i];
+	}
+}
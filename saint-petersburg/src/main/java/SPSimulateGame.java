@@ -1,5 +1,12 @@
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Supplier;
 
 public class SPSimulateGame {
 
@@ -9,11 +16,11 @@ public class SPSimulateGame {
 			transcript.addPlayerName(player.getName());
 		}
 		SPState state = new SPState(players.length);
-		transcript.addState(state.clone());
+		transcript.addState(state.cowClone()); // copy-on-write: states share unchanged zones
 		while (!state.isGameOver()) {
 			int currentPlayerIndex = state.playerTurn;
 			SPPlayer currentPlayer = players[currentPlayerIndex];
-			SPState stateCopy = state.clone();
+			SPState stateCopy = state.cowClone();
 			int actionIndex = currentPlayer.getAction(stateCopy);
 			ArrayList<SPAction> legalActions = stateCopy.getLegalActions();
 			if (actionIndex < 0 || actionIndex >= legalActions.size()) {
@@ -28,6 +35,99 @@ public class SPSimulateGame {
 		return transcript;
 	}		
 
+	// Simulate a game keeping only its result, for win-rate sweeps that do not need the states and actions.
+	// Forced moves that draw no cards are applied without asking the player (see SPState.applyForcedMoves()).
+	// If onMove is not null, it is called before each player's move with the state and the chosen action; the state is
+	// changed by the action right after the call, so a callback that keeps it must clone it.
+	public static SPGameResult simulateGameResult(BiConsumer<SPState, SPAction> onMove, SPPlayer... players) {
+		ArrayList<String> playerNames = new ArrayList<>();
+		for (SPPlayer player : players) {
+			playerNames.add(player.getName());
+		}
+		SPState state = new SPState(players.length);
+		state.skipForcedMoves = true;
+		state.applyForcedMoves(null);
+		int numMoves = 0;
+		while (!state.isGameOver()) {
+			SPPlayer currentPlayer = players[state.playerTurn];
+			SPState stateCopy = state.cowClone(); // the player may change its copy
+			int actionIndex = currentPlayer.getAction(stateCopy);
+			ArrayList<SPAction> legalActions = stateCopy.getLegalActions();
+			if (actionIndex < 0 || actionIndex >= legalActions.size()) {
+				throw new IllegalArgumentException("Player " + currentPlayer.getName() + " chose an invalid action index: " + actionIndex);
+			}
+			SPAction action = legalActions.get(actionIndex);
+			if (onMove != null) {
+				onMove.accept(stateCopy, action);
+			}
+			action.take();
+			state = stateCopy;
+			numMoves++;
+		}
+		return new SPGameResult(playerNames, state, numMoves);
+	}
+
+	// Simulate count games on a work-stealing pool with the given parallelism.  Each worker thread builds its own players,
+	// one per seat from playerFactories, and reuses them for its games.  Each finished transcript is passed to resultSink
+	// with its game number as soon as the game ends; the sink is called from worker threads, so it must be thread-safe.
+	// Returns when all games have finished, rethrowing the first exception thrown by a game or the sink.
+	public static void simulateGames(int count, List<Supplier<? extends SPPlayer>> playerFactories, int parallelism,
+			ObjIntConsumer<SPGameTranscript> resultSink) {
+		simulateGames(count, playerFactories, parallelism, SPSimulateGame::simulateGame, resultSink);
+	}
+
+	// Simulate count games on a work-stealing pool as simulateGames() does, passing only each game's result to resultSink
+	public static void simulateGameResults(int count, List<Supplier<? extends SPPlayer>> playerFactories, int parallelism,
+			ObjIntConsumer<SPGameResult> resultSink) {
+		simulateGames(count, playerFactories, parallelism, players -> simulateGameResult(null, players), resultSink);
+	}
+
+	private static <T> void simulateGames(int count, List<Supplier<? extends SPPlayer>> playerFactories, int parallelism,
+			Function<SPPlayer[], T> game, ObjIntConsumer<T> resultSink) {
+		ThreadLocal<SPPlayer[]> workerPlayers = ThreadLocal.withInitial(() -> {
+			SPPlayer[] players = new SPPlayer[playerFactories.size()];
+			for (int i = 0; i < players.length; i++) {
+				players[i] = playerFactories.get(i).get();
+			}
+			return players;
+		});
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			pool.invoke(new GameRange<>(0, count, workerPlayers, game, resultSink));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	// A range of game numbers, split in halves until single games so that idle workers can steal the rest of a range
+	private static class GameRange<T> extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int start, end;
+		private final ThreadLocal<SPPlayer[]> workerPlayers;
+		private final Function<SPPlayer[], T> game;
+		private final ObjIntConsumer<T> resultSink;
+
+		GameRange(int start, int end, ThreadLocal<SPPlayer[]> workerPlayers, Function<SPPlayer[], T> game, ObjIntConsumer<T> resultSink) {
+			this.start = start;
+			this.end = end;
+			this.workerPlayers = workerPlayers;
+			this.game = game;
+			this.resultSink = resultSink;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start == 1) {
+				resultSink.accept(game.apply(workerPlayers.get()), start);
+			}
+			else if (end > start) {
+				int middle = (start + end) >>> 1;
+				invokeAll(new GameRange<>(start, middle, workerPlayers, game, resultSink),
+						new GameRange<>(middle, end, workerPlayers, game, resultSink));
+			}
+		}
+	}
+
 	public static void printGameTranscript(SPGameTranscript transcript, PrintStream out) {
 
 		// Print the states and actions of the game:
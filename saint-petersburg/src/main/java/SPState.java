@@ -3,10 +3,9 @@
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
 
 public class SPState implements Cloneable {
 
@@ -24,6 +23,17 @@ public class SPState implements Cloneable {
 	public static final List<Integer> UNIQUE_ARISTOCRAT_BONUS_POINTS = Collections.unmodifiableList(Arrays.asList(0, 1, 3, 6, 10, 15, 21, 28, 36, 45, 55)); // Bonus points for number of unique aristocrats
 	// Bonus points for number of unique aristocrats at game end
 	public static final int MAX_UNIQUE_ARISTOCRATS = UNIQUE_ARISTOCRAT_BONUS_POINTS.size() - 1; // Maximum number of unique aristocrats
+	private static final int[] UNIQUE_ARISTOCRAT_BONUS = UNIQUE_ARISTOCRAT_BONUS_POINTS.stream().mapToInt(Integer::intValue).toArray();
+	public static final int RUBLES_PER_FINAL_POINT = 10; // Remaining rubles score 1 point per 10 at game end
+	public static final int HAND_CARD_PENALTY = 5; // Points lost per card left in hand at game end
+	// Zone indices for the card lists of a state: the decks use the phase constants WORKER to TRADING, followed by the
+	// market rows, the discard pile, and the hand, workers, buildings and aristocrats of each player
+	public static final int UPPER_ROW_ZONE = 4;
+	public static final int LOWER_ROW_ZONE = 5;
+	public static final int DISCARD_ZONE = 6;
+	public static final int FIRST_PLAYER_ZONE = 7;
+	public static final int HAND_ZONE = 0, WORKERS_ZONE = 1, BUILDINGS_ZONE = 2, ARISTOCRATS_ZONE = 3; // offsets of player zones
+	public static final int ZONES_PER_PLAYER = 4;
 	public int numPlayers = 2; // Number of players in the game
 	public int round = 1; // Current round of the game
 	public int phase = WORKER;
@@ -46,6 +56,24 @@ public class SPState implements Cloneable {
 	public int[] usedObservatories = new int[numPlayers]; // Used observatories
 	public SPCard observedCard = null; // Card observed by the player
 	public boolean[] isWinner = new boolean[numPlayers]; // Whether players are winners
+	private long sharedZones = 0L; // Bitset of zones shared with copy-on-write clones
+	private RandomGenerator cardRandom = null; // Random source for card draws, or null for the calling thread's ThreadLocalRandom
+	public boolean skipForcedMoves = false; // Whether taking an action also applies the forced moves that follow it
+	public int numForcedMoves = 0; // Forced moves applied automatically so far, see applyForcedMoves()
+	// Per-player aggregates of the workers, buildings and aristocrats, maintained by updateHoldings() as cards are bought and replaced
+	public int[] numWarehouses = new int[numPlayers]; // Warehouses of players
+	public int[] numBuildingDiscounts = new int[numPlayers]; // Carpenter Workshops among buildings of players
+	public int[] numAristocratDiscounts = new int[numPlayers]; // Gold Smelters among buildings of players
+	public int[] numObservatories = new int[numPlayers]; // Observatories of players
+	public int[] numPubs = new int[numPlayers]; // Pubs of players
+	public int[] numMariinskij = new int[numPlayers]; // Mariinskij Theaters of players
+	public int[] numTaxMen = new int[numPlayers]; // Tax Men of players
+	public int[][] playerPointsPerPhase = new int[numPlayers][ARISTOCRAT + 1]; // Card points of players per scoring phase
+	public int[][] playerRublesPerPhase = new int[numPlayers][ARISTOCRAT + 1]; // Card rubles of players per scoring phase
+	public int[] playerPointsPerRound = new int[numPlayers]; // Card points of players per round
+	public int[] playerRublesPerRound = new int[numPlayers]; // Card rubles of players per round
+	public long[] playerUniqueAristocrats = new long[numPlayers]; // Bitset of aristocrat card ids held by players
+	public int[][] playerCardCounts = new int[numPlayers][SPCard.NUM_ALL_CARDS]; // Count of each card id held by players
 
 	public SPState(int numPlayers) {
 		this.numPlayers = numPlayers;
@@ -59,6 +87,21 @@ public class SPState implements Cloneable {
 		initialize();
 	}
 
+	// Construct a state with empty zones and no cards dealt, to be filled in from another representation (e.g. SPCompactState)
+	SPState(int numPlayers, boolean deal) {
+		this.numPlayers = numPlayers;
+		if (deal) {
+			initialize();
+			return;
+		}
+		for (int i = 0; i < numPlayers; i++) {
+			playerHands.add(new ArrayList<>());
+			playerWorkers.add(new ArrayList<>());
+			playerBuildings.add(new ArrayList<>());
+			playerAristocrats.add(new ArrayList<>());
+		}
+	}
+
 	private void initialize() {
 		// Initialize decks with cards from SPCard class
 		for (SPCard card : SPCard.ALL_CARDS) {
@@ -126,9 +169,140 @@ public class SPState implements Cloneable {
 		return sb.toString();
 	}
 
+	// Update a player's aggregates for a card added to (delta 1) or removed from (delta -1) their workers, buildings or aristocrats
+	void updateHoldings(int player, SPCard card, int delta) {
+		int holding = getHoldingPhase(card);
+		playerPointsPerPhase[player][holding] += delta * card.points;
+		playerRublesPerPhase[player][holding] += delta * card.rubles;
+		playerPointsPerRound[player] += delta * card.points;
+		playerRublesPerRound[player] += delta * card.rubles;
+		playerCardCounts[player][card.id] += delta;
+		if (holding == ARISTOCRAT) {
+			if (playerCardCounts[player][card.id] > 0) {
+				playerUniqueAristocrats[player] |= 1L << card.id;
+			} else {
+				playerUniqueAristocrats[player] &= ~(1L << card.id);
+			}
+		}
+		if (card.effects == 0) {
+			return;
+		}
+		if (holding == BUILDING) {
+			if (card.hasEffect(SPCard.WAREHOUSE)) {
+				numWarehouses[player] += delta;
+			}
+			if (card.hasEffect(SPCard.CARPENTER_WORKSHOP)) {
+				numBuildingDiscounts[player] += delta;
+			}
+			if (card.hasEffect(SPCard.GOLD_SMELTER)) {
+				numAristocratDiscounts[player] += delta;
+			}
+			if (card.hasEffect(SPCard.OBSERVATORY)) {
+				numObservatories[player] += delta;
+			}
+			if (card.hasEffect(SPCard.PUB)) {
+				numPubs[player] += delta;
+			}
+			if (card.hasEffect(SPCard.MARIINSKIJ)) {
+				numMariinskij[player] += delta;
+			}
+		}
+		else if (holding == ARISTOCRAT && card.hasEffect(SPCard.TAX_MAN)) {
+			numTaxMen[player] += delta;
+		}
+	}
+
+	// Recompute the per-player aggregates from the player zones, e.g. after filling in the zones directly
+	public void recomputeAggregates() {
+		numWarehouses = new int[numPlayers];
+		numBuildingDiscounts = new int[numPlayers];
+		numAristocratDiscounts = new int[numPlayers];
+		numObservatories = new int[numPlayers];
+		numPubs = new int[numPlayers];
+		numMariinskij = new int[numPlayers];
+		numTaxMen = new int[numPlayers];
+		playerPointsPerPhase = new int[numPlayers][ARISTOCRAT + 1];
+		playerRublesPerPhase = new int[numPlayers][ARISTOCRAT + 1];
+		playerPointsPerRound = new int[numPlayers];
+		playerRublesPerRound = new int[numPlayers];
+		playerUniqueAristocrats = new long[numPlayers];
+		playerCardCounts = new int[numPlayers][SPCard.NUM_ALL_CARDS];
+		for (int player = 0; player < numPlayers; player++) {
+			for (SPCard card : playerWorkers.get(player)) {
+				updateHoldings(player, card, 1);
+			}
+			for (SPCard card : playerBuildings.get(player)) {
+				updateHoldings(player, card, 1);
+			}
+			for (SPCard card : playerAristocrats.get(player)) {
+				updateHoldings(player, card, 1);
+			}
+		}
+	}
+
+	// The phase in which the card scores once bought, which is also the player zone it is bought into
+	public static int getHoldingPhase(SPCard card) {
+		if (card.isWorker) {
+			return WORKER;
+		}
+		return card.isBuilding ? BUILDING : ARISTOCRAT;
+	}
+
+	// The random source for card draws in this state
+	public RandomGenerator getCardRandom() {
+		return cardRandom != null ? cardRandom : ThreadLocalRandom.current();
+	}
+
+	// The policy for card draws in this state: uniformly random positions from the state's random source
+	public SPDrawPolicy getDrawPolicy() {
+		return cardRandom != null ? SPDrawPolicy.random(cardRandom) : SPDrawPolicy.THREAD_LOCAL_RANDOM;
+	}
+
+	// Set the random source for card draws, or null for the calling thread's ThreadLocalRandom.  Clones of the state
+	// draw from a split (or jump) of the generator, so it must be a SplittableGenerator or JumpableGenerator.
+	public void setCardRandom(RandomGenerator random) {
+		if (random != null && !(random instanceof RandomGenerator.SplittableGenerator)
+				&& !(random instanceof RandomGenerator.JumpableGenerator)) {
+			throw new IllegalArgumentException("Card random source must be splittable or jumpable: " + random.getClass().getName());
+		}
+		cardRandom = random;
+	}
+
+	// A generator for a copy of the state, with a stream of its own so that copies neither draw the same cards nor share
+	// a generator across threads.  Splitting or jumping advances this state's generator.
+	private RandomGenerator splitCardRandom() {
+		if (cardRandom instanceof RandomGenerator.SplittableGenerator) {
+			return ((RandomGenerator.SplittableGenerator) cardRandom).split();
+		}
+		if (cardRandom instanceof RandomGenerator.JumpableGenerator) {
+			return ((RandomGenerator.JumpableGenerator) cardRandom).copyAndJump();
+		}
+		return cardRandom; // null, for ThreadLocalRandom
+	}
+
 	public int getNumUniqueAristocrats(int player) {
 		// Count unique aristocrats for a player
-		return new HashSet<>(playerAristocrats.get(player)).size();
+		return Long.bitCount(playerUniqueAristocrats[player]);
+	}
+
+	// Bonus points for the given number of unique aristocrats, which counts up to MAX_UNIQUE_ARISTOCRATS
+	public static int uniqueAristocratBonus(int numUniqueAristocrats) {
+		return UNIQUE_ARISTOCRAT_BONUS[Math.min(numUniqueAristocrats, MAX_UNIQUE_ARISTOCRATS)];
+	}
+
+	// The unique aristocrat bonus the player would score if the game ended now
+	public int getUniqueAristocratBonus(int player) {
+		return uniqueAristocratBonus(getNumUniqueAristocrats(player));
+	}
+
+	// The player's final score if the game ended now: points plus the unique aristocrat bonus, 1 point per 10 rubles,
+	// and -5 points per card in hand.  Constant time, from the aristocrat bitset.  Once the game is over, the final points.
+	public int getProvisionalScore(int player) {
+		if (phase == END) {
+			return playerPoints[player]; // end-of-game scoring is already included
+		}
+		return playerPoints[player] + getUniqueAristocratBonus(player) + playerRubles[player] / RUBLES_PER_FINAL_POINT
+				- HAND_CARD_PENALTY * playerHands.get(player).size();
 	}
 
 	public ArrayList<Integer> getStartingPhases(int player) {
@@ -152,34 +326,8 @@ public class SPState implements Cloneable {
 		}
 		sb.append("Player\tPoints (per phase)\tRubles (per phase)\tAristocrats\tStarting Phases\n");
 		for (int player = 0; player < numPlayers; player++) {
-			int[] pointsPerPhase = new int[3];
-			for (int phase = 0; phase < pointsPerPhase.length; phase++) {
-				switch (phase) {
-					case WORKER:
-						pointsPerPhase[phase] = playerWorkers.get(player).stream().mapToInt(card -> card.points).sum();
-						break;
-					case BUILDING:
-						pointsPerPhase[phase] = playerBuildings.get(player).stream().mapToInt(card -> card.points).sum();
-						break;
-					case ARISTOCRAT:
-						pointsPerPhase[phase] = playerAristocrats.get(player).stream().mapToInt(card -> card.points).sum();
-						break;
-				}
-			}
-			int[] rublesPerPhase = new int[NUM_DECKS];
-			for (int phase = 0; phase < NUM_DECKS; phase++) {
-				switch (phase) {
-					case WORKER:
-						rublesPerPhase[phase] = playerWorkers.get(player).stream().mapToInt(card -> card.rubles).sum();
-						break;
-					case BUILDING:
-						rublesPerPhase[phase] = playerBuildings.get(player).stream().mapToInt(card -> card.rubles).sum();
-						break;
-					case ARISTOCRAT:
-						rublesPerPhase[phase] = playerAristocrats.get(player).stream().mapToInt(card -> card.rubles).sum();
-						break;
-				}
-			}
+			int[] pointsPerPhase = playerPointsPerPhase[player];
+			int[] rublesPerPhase = playerRublesPerPhase[player];
 			// Convert the getStartingPhases integers into a list of Strings representation
 			List<String> startingPhaseStrings = new ArrayList<>();
 			for (int startingPhase : getStartingPhases(player)) {
@@ -206,6 +354,14 @@ public class SPState implements Cloneable {
 		return sb.toString();
 	}
 
+	private static int[][] deepClone(int[][] array) {
+		int[][] copy = array.clone();
+		for (int i = 0; i < copy.length; i++) {
+			copy[i] = array[i].clone();
+		}
+		return copy;
+	}
+
 	@SuppressWarnings("unchecked")
 	public SPState clone() {
 		try {
@@ -227,289 +383,519 @@ public class SPState implements Cloneable {
 			copy.upperCardRow = (ArrayList<SPCard>) upperCardRow.clone();
 			copy.lowerCardRow = (ArrayList<SPCard>) lowerCardRow.clone();
 			copy.discardPile = (ArrayList<SPCard>) discardPile.clone();
-			copy.playerRubles = playerRubles.clone();
-			copy.playerPoints = playerPoints.clone();
-			copy.playerPassed = playerPassed.clone();
-			copy.startingPlayer = startingPlayer.clone();
-			copy.usedObservatories = usedObservatories.clone();
-			copy.isWinner = isWinner.clone();
+			copy.sharedZones = 0L; // all zones of the copy are its own
+			copyArrays(copy);
+			return copy;
+		} catch (CloneNotSupportedException e) {
+			throw new AssertionError(); // Can't happen
+		}
+	}
+
+	// Copy-on-write clone: the copy shares its card zones with this state until either state writes to a zone through an
+	// SPAction, at which point only that zone is copied.  Code that edits zones directly (e.g. shuffling a deck) must
+	// do so on a clone() instead.
+	public SPState cowClone() {
+		try {
+			SPState copy = (SPState) super.clone(); // Shallow copy, sharing all zones
+			sharedZones = copy.sharedZones = (1L << getNumZones()) - 1;
+			copyArrays(copy);
 			return copy;
 		} catch (CloneNotSupportedException e) {
 			throw new AssertionError(); // Can't happen
 		}
 	}
 
-	@SuppressWarnings("null")
+	// Give the copy its own copies of the per-player arrays and random source
+	private void copyArrays(SPState copy) {
+		copy.playerRubles = playerRubles.clone();
+		copy.playerPoints = playerPoints.clone();
+		copy.playerPassed = playerPassed.clone();
+		copy.startingPlayer = startingPlayer.clone();
+		copy.usedObservatories = usedObservatories.clone();
+		copy.isWinner = isWinner.clone();
+		copy.numWarehouses = numWarehouses.clone();
+		copy.numBuildingDiscounts = numBuildingDiscounts.clone();
+		copy.numAristocratDiscounts = numAristocratDiscounts.clone();
+		copy.numObservatories = numObservatories.clone();
+		copy.numPubs = numPubs.clone();
+		copy.numMariinskij = numMariinskij.clone();
+		copy.numTaxMen = numTaxMen.clone();
+		copy.playerPointsPerPhase = deepClone(playerPointsPerPhase);
+		copy.playerRublesPerPhase = deepClone(playerRublesPerPhase);
+		copy.playerPointsPerRound = playerPointsPerRound.clone();
+		copy.playerRublesPerRound = playerRublesPerRound.clone();
+		copy.playerUniqueAristocrats = playerUniqueAristocrats.clone();
+		copy.playerCardCounts = deepClone(playerCardCounts);
+		copy.cardRandom = splitCardRandom();
+	}
+
+	// Overwrite this state in place with a copy of the given state, reusing this state's lists and arrays where their
+	// sizes allow, so that search loops can recycle scratch states (see SPStatePool) instead of cloning
+	public SPState copyFrom(SPState other) {
+		if (other == this) {
+			return this;
+		}
+		numPlayers = other.numPlayers;
+		round = other.round;
+		phase = other.phase;
+		playerTurn = other.playerTurn;
+		observedCard = other.observedCard;
+		workerDeck = copyZone(other.workerDeck, workerDeck, WORKER);
+		buildingDeck = copyZone(other.buildingDeck, buildingDeck, BUILDING);
+		aristocratDeck = copyZone(other.aristocratDeck, aristocratDeck, ARISTOCRAT);
+		tradingDeck = copyZone(other.tradingDeck, tradingDeck, TRADING);
+		upperCardRow = copyZone(other.upperCardRow, upperCardRow, UPPER_ROW_ZONE);
+		lowerCardRow = copyZone(other.lowerCardRow, lowerCardRow, LOWER_ROW_ZONE);
+		discardPile = copyZone(other.discardPile, discardPile, DISCARD_ZONE);
+		boolean ownPlayerLists = (sharedZones >>> FIRST_PLAYER_ZONE) == 0;
+		if (!ownPlayerLists || playerHands.size() != numPlayers) {
+			// The outer player lists may be shared with a copy-on-write clone, or have the wrong size
+			playerHands = new ArrayList<>(numPlayers);
+			playerWorkers = new ArrayList<>(numPlayers);
+			playerBuildings = new ArrayList<>(numPlayers);
+			playerAristocrats = new ArrayList<>(numPlayers);
+			for (int i = 0; i < numPlayers; i++) {
+				playerHands.add(new ArrayList<>(other.playerHands.get(i)));
+				playerWorkers.add(new ArrayList<>(other.playerWorkers.get(i)));
+				playerBuildings.add(new ArrayList<>(other.playerBuildings.get(i)));
+				playerAristocrats.add(new ArrayList<>(other.playerAristocrats.get(i)));
+			}
+		}
+		else {
+			for (int i = 0; i < numPlayers; i++) {
+				copyInto(other.playerHands.get(i), playerHands.get(i));
+				copyInto(other.playerWorkers.get(i), playerWorkers.get(i));
+				copyInto(other.playerBuildings.get(i), playerBuildings.get(i));
+				copyInto(other.playerAristocrats.get(i), playerAristocrats.get(i));
+			}
+		}
+		sharedZones = 0L;
+		playerRubles = copyArray(other.playerRubles, playerRubles);
+		playerPoints = copyArray(other.playerPoints, playerPoints);
+		playerPassed = copyArray(other.playerPassed, playerPassed);
+		startingPlayer = copyArray(other.startingPlayer, startingPlayer);
+		usedObservatories = copyArray(other.usedObservatories, usedObservatories);
+		isWinner = copyArray(other.isWinner, isWinner);
+		numWarehouses = copyArray(other.numWarehouses, numWarehouses);
+		numBuildingDiscounts = copyArray(other.numBuildingDiscounts, numBuildingDiscounts);
+		numAristocratDiscounts = copyArray(other.numAristocratDiscounts, numAristocratDiscounts);
+		numObservatories = copyArray(other.numObservatories, numObservatories);
+		numPubs = copyArray(other.numPubs, numPubs);
+		numMariinskij = copyArray(other.numMariinskij, numMariinskij);
+		numTaxMen = copyArray(other.numTaxMen, numTaxMen);
+		playerPointsPerPhase = copyArray(other.playerPointsPerPhase, playerPointsPerPhase);
+		playerRublesPerPhase = copyArray(other.playerRublesPerPhase, playerRublesPerPhase);
+		playerPointsPerRound = copyArray(other.playerPointsPerRound, playerPointsPerRound);
+		playerRublesPerRound = copyArray(other.playerRublesPerRound, playerRublesPerRound);
+		if (playerUniqueAristocrats.length == other.playerUniqueAristocrats.length) {
+			System.arraycopy(other.playerUniqueAristocrats, 0, playerUniqueAristocrats, 0, playerUniqueAristocrats.length);
+		}
+		else {
+			playerUniqueAristocrats = other.playerUniqueAristocrats.clone();
+		}
+		playerCardCounts = copyArray(other.playerCardCounts, playerCardCounts);
+		cardRandom = other.splitCardRandom();
+		skipForcedMoves = other.skipForcedMoves;
+		numForcedMoves = other.numForcedMoves;
+		return this;
+	}
+
+	// Copy a zone's cards into this state's list for the zone, unless that list is shared with a copy-on-write clone
+	private ArrayList<SPCard> copyZone(ArrayList<SPCard> source, ArrayList<SPCard> destination, int zone) {
+		if ((sharedZones & 1L << zone) != 0) {
+			return new ArrayList<>(source);
+		}
+		copyInto(source, destination);
+		return destination;
+	}
+
+	private static void copyInto(ArrayList<SPCard> source, ArrayList<SPCard> destination) {
+		destination.clear();
+		destination.addAll(source);
+	}
+
+	private static int[] copyArray(int[] source, int[] destination) {
+		if (destination.length != source.length) {
+			return source.clone();
+		}
+		System.arraycopy(source, 0, destination, 0, source.length);
+		return destination;
+	}
+
+	private static boolean[] copyArray(boolean[] source, boolean[] destination) {
+		if (destination.length != source.length) {
+			return source.clone();
+		}
+		System.arraycopy(source, 0, destination, 0, source.length);
+		return destination;
+	}
+
+	private static int[][] copyArray(int[][] source, int[][] destination) {
+		if (destination.length != source.length) {
+			return deepClone(source);
+		}
+		for (int i = 0; i < source.length; i++) {
+			destination[i] = copyArray(source[i], destination[i]);
+		}
+		return destination;
+	}
+
+	public int getNumZones() {
+		return FIRST_PLAYER_ZONE + ZONES_PER_PLAYER * numPlayers;
+	}
+
+	// The zone index of a player's hand, workers, buildings or aristocrats
+	public static int getPlayerZone(int player, int zoneOffset) {
+		return FIRST_PLAYER_ZONE + ZONES_PER_PLAYER * player + zoneOffset;
+	}
+
+	// The card list of a zone, for reading
+	public ArrayList<SPCard> getZone(int zone) {
+		switch (zone) {
+			case WORKER:
+				return workerDeck;
+			case BUILDING:
+				return buildingDeck;
+			case ARISTOCRAT:
+				return aristocratDeck;
+			case TRADING:
+				return tradingDeck;
+			case UPPER_ROW_ZONE:
+				return upperCardRow;
+			case LOWER_ROW_ZONE:
+				return lowerCardRow;
+			case DISCARD_ZONE:
+				return discardPile;
+		}
+		int player = (zone - FIRST_PLAYER_ZONE) / ZONES_PER_PLAYER;
+		switch ((zone - FIRST_PLAYER_ZONE) % ZONES_PER_PLAYER) {
+			case HAND_ZONE:
+				return playerHands.get(player);
+			case WORKERS_ZONE:
+				return playerWorkers.get(player);
+			case BUILDINGS_ZONE:
+				return playerBuildings.get(player);
+			default:
+				return playerAristocrats.get(player);
+		}
+	}
+
+	// The zone index of one of this state's card lists, or -1 if the list is not a zone of this state
+	public int getZoneIndex(ArrayList<SPCard> list) {
+		if (list == null) {
+			return -1;
+		}
+		int numZones = getNumZones();
+		for (int zone = 0; zone < numZones; zone++) {
+			if (getZone(zone) == list) {
+				return zone;
+			}
+		}
+		return -1;
+	}
+
+	// The card list of a zone, for writing: a zone shared with a copy-on-write clone is first replaced by a private copy
+	ArrayList<SPCard> getWritableZone(int zone) {
+		ArrayList<SPCard> list = getZone(zone);
+		if ((sharedZones & 1L << zone) == 0) {
+			return list;
+		}
+		sharedZones &= ~(1L << zone);
+		ArrayList<SPCard> copy = new ArrayList<>(list);
+		switch (zone) {
+			case WORKER:
+				workerDeck = copy;
+				break;
+			case BUILDING:
+				buildingDeck = copy;
+				break;
+			case ARISTOCRAT:
+				aristocratDeck = copy;
+				break;
+			case TRADING:
+				tradingDeck = copy;
+				break;
+			case UPPER_ROW_ZONE:
+				upperCardRow = copy;
+				break;
+			case LOWER_ROW_ZONE:
+				lowerCardRow = copy;
+				break;
+			case DISCARD_ZONE:
+				discardPile = copy;
+				break;
+			default:
+				// The lists of player zones are shared too, so the state gets its own before the zone is replaced
+				int player = (zone - FIRST_PLAYER_ZONE) / ZONES_PER_PLAYER;
+				switch ((zone - FIRST_PLAYER_ZONE) % ZONES_PER_PLAYER) {
+					case HAND_ZONE:
+						playerHands = new ArrayList<>(playerHands);
+						playerHands.set(player, copy);
+						break;
+					case WORKERS_ZONE:
+						playerWorkers = new ArrayList<>(playerWorkers);
+						playerWorkers.set(player, copy);
+						break;
+					case BUILDINGS_ZONE:
+						playerBuildings = new ArrayList<>(playerBuildings);
+						playerBuildings.set(player, copy);
+						break;
+					default:
+						playerAristocrats = new ArrayList<>(playerAristocrats);
+						playerAristocrats.set(player, copy);
+						break;
+				}
+		}
+		return copy;
+	}
+
+	// Upper bound on the number of legal moves: a pass, buys of each hand and market card (trading cards once per replaceable
+	// card type), observations of each deck, and adding each market card to the hand
+	public static final int MAX_LEGAL_ACTIONS = 1 + (4 + MARKET_SIZE) * SPCard.NUM_ALL_CARDS + NUM_DECKS + MARKET_SIZE;
+	private static final ThreadLocal<int[]> MOVE_BUFFER = ThreadLocal.withInitial(() -> new int[MAX_LEGAL_ACTIONS]);
+
 	public ArrayList<SPAction> getLegalActions() {
-		ArrayList<SPAction> legalActions = new ArrayList<>();
-		if (isGameOver()) {
-			return legalActions; // No actions allowed in the end phase
+		int[] moves = MOVE_BUFFER.get();
+		int numMoves = generateMoves(moves);
+		ArrayList<SPAction> legalActions = new ArrayList<>(numMoves);
+		for (int i = 0; i < numMoves; i++) {
+			legalActions.add(decodeMove(moves[i]));
 		}
+		return legalActions;
+	}
 
-		// Determine if the player has room in their hand for another card
-		// Check if the player has a Warehouse building card
-		boolean hasWarehouse = playerBuildings.get(playerTurn).stream().anyMatch(b -> b.name.equals("Warehouse"));
-		boolean hasRoomInHand = (hasWarehouse ? 4 : 3) - playerHands.get(playerTurn).size() > 0; // Check if the player has room in hand
+	// Choose a legal action uniformly at random, with the same distribution as choosing uniformly from getLegalActions(),
+	// but building only the chosen action; returns null if the game is over
+	public SPAction sampleRandomLegalAction(RandomGenerator random) {
+		int[] moves = MOVE_BUFFER.get();
+		int numMoves = generateMoves(moves);
+		if (numMoves == 0) {
+			return null;
+		}
+		return decodeMove(moves[random.nextInt(numMoves)]);
+	}
 
-		// If the player has bought the "Carpenter Workshop", the building costs are reduced by 1
-		boolean hasBuildingDiscount = false;
-		if (playerBuildings.get(playerTurn).stream()
-				.anyMatch(c -> c.name.equals("Carpenter Workshop"))) {
-			hasBuildingDiscount = true;
+	// Apply moves while there is exactly one legal move and it draws no cards, recording undo if not null, and return the
+	// number applied.  Forced chance moves (e.g. the last pass of a phase, refilling the market) are left to the caller, so
+	// that search trees still branch on their outcomes.  Called after each action when skipForcedMoves is set.
+	public int applyForcedMoves(SPUndoRecord undo) {
+		int[] moves = MOVE_BUFFER.get();
+		int numApplied = 0;
+		while (generateMoves(moves) == 1) {
+			SPAction action = decodeMove(moves[0]);
+			if (action.isChanceAction()) {
+				break;
+			}
+			action.apply(this, getDrawPolicy(), undo);
+			numApplied++;
 		}
+		numForcedMoves += numApplied;
+		return numApplied;
+	}
 
-		// If the player has bought the "Gold Smelter", the aristocrat costs are reduced by 1
-		boolean hasAristocratDiscount = false;
-		if (playerBuildings.get(playerTurn).stream()
-				.anyMatch(c -> c.name.equals("Gold Smelter"))) {
-			hasAristocratDiscount = true;
+	// Forced moves applied automatically so far
+	public int getNumForcedMoves() {
+		return numForcedMoves;
+	}
+
+	// Write the legal moves as packed SPMove codes into the given buffer (of at least MAX_LEGAL_ACTIONS length),
+	// in the same order as getLegalActions(), and return the number of moves
+	public int generateMoves(int[] moves) {
+		int numMoves = 0;
+		if (isGameOver()) {
+			return numMoves; // No actions allowed in the end phase
 		}
 
+		// Determine if the player has room in their hand for another card
+		// Check if the player has a Warehouse building card
+		boolean hasWarehouse = numWarehouses[playerTurn] > 0;
+		boolean hasRoomInHand = (hasWarehouse ? 4 : 3) - playerHands.get(playerTurn).size() > 0; // Check if the player has room in hand
+
 		// Determine if the player has an unused observatory
 		int numUnusedObservatories = 0;
 		if (phase == BUILDING) {
-			numUnusedObservatories = (int) playerBuildings.get(playerTurn).stream()
-				.filter(observatory -> observatory.name.equals("Observatory")).count();
+			numUnusedObservatories = numObservatories[playerTurn];
 			numUnusedObservatories -= usedObservatories[playerTurn]; // Subtract the number of observatories used this round
 		}
 
 		// If they have observed a pile, they must choose what to do with the observed card.
 		if (observedCard != null) {
 			// Discard the observed card
-			legalActions.add(new SPDiscardAction(this));
+			moves[numMoves++] = SPMove.pack(SPMove.DISCARD, 0, 0, null, 0);
 			// If the player has room in hand, they can add the observed card to their hand
 			if (hasRoomInHand) {
-				legalActions.add(new SPAddToHandAction(this, observedCard, null)); // null indicates the card is not from a row
+				moves[numMoves++] = SPMove.pack(SPMove.ADD_TO_HAND, SPMove.OBSERVED, 0, null, 0);
 			}
 			// If the player can afford to buy the observed card, add buy action(s)
-			int rubles = playerRubles[playerTurn];
-			if (rubles > 1) { // all buys require at least 1 ruble) {
-				SPCard card = observedCard; // The card being observed
-				int cost = card.cost;
-				if (card.isBuilding && hasBuildingDiscount) {
-					cost--; // Building costs are reduced by 1 if the player has the Carpenter Workshop
-				}
-				if (card.isAristocrat && hasAristocratDiscount) {
-					cost--; // Aristocrat costs are reduced by 1 if the player has the Gold Smelter
-				}
-
-				// Determine the destination for the card
-				ArrayList<SPCard> cardDestination = null;
-				if (card.isWorker) {
-					cardDestination = playerWorkers.get(playerTurn);
-				} else if (card.isBuilding) {
-					cardDestination = playerBuildings.get(playerTurn);
-				} else if (card.isAristocrat) {
-					cardDestination = playerAristocrats.get(playerTurn);
-				}
-				// Reduce the cost by 1 for each same card in the destination
-				for (SPCard c : cardDestination) {
-					if (c == card) {
-						cost--;
-					}
-				}
-
-				// If the card is not a trading card, create a buy action if affordable
-				if (!card.isTrading) {
-					if (cost < 1) {
-						cost = 1; // Ensure the cost is not less than 1
-					}
-					if (rubles >= cost) {
-						// Create a buy action for the card
-						SPBuyAction buyAction = new SPBuyAction(this, card, null, cardDestination, cost);
-						legalActions.add(buyAction);
-					}
-				} // end observed non-trading card handling 
-				else { // If the card is a trading card, create a buy action(s) with replaced card(s)
-					// Compute the replaceable cards with associated costs
-					Map<SPCard, Integer> replaceableCards = new HashMap<>();
-					for (SPCard c : cardDestination) {
-						if (c.isTrading) {
-							continue; // cannot replace trading cards with trading cards
-						}
-						// Worker trading cards have to replace compatible worker cards
-						if (c.isWorker) {
-							// determine if the trading card can replace the worker card
-							if (!c.name.equals("Czar and Carpenter")) // automatically compatible
-							{
-								String cardNotes = card.other;
-								// if the card notes has the string "replaces ",
-								// then extract the trading card name thereafter to the end of the string
-								int index = cardNotes.indexOf("replaces ");
-								String replacedWorkerType = cardNotes.substring(index + 9).trim();
-								if (!c.name.equalsIgnoreCase(replacedWorkerType)) {
-									continue; // incompatible worker card
-								}
-							}
-						}
-						int replaceCost = cost - c.cost; // Cost of replacing the card
-						if (c.name.equals("Observatory")) {
-							if (numUnusedObservatories < 1) {
-								continue; // Cannot replace an Observatory if none are left unused
-							}
-						}
-						if (card.name.endsWith("Village")) {
-							replaceCost -= 4; // Potjomkin's/Potemkin Village credits 6 while only costing 2
-						}
-						if (replaceCost < 1) {
-							replaceCost = 1; // Ensure the cost is not less than 1
-						}
-						if (rubles >= replaceCost) {
-							replaceableCards.put(c, replaceCost); // Add the card and its cost to the map
-						}
-					}
-					// Create a buy action for each replaceable card
-					for (Map.Entry<SPCard, Integer> entry : replaceableCards.entrySet()) {
-						SPCard replacedCard = entry.getKey();
-						int replaceCost = entry.getValue();
-						SPBuyAction buyAction = new SPBuyAction(this, card, null, cardDestination, replaceCost, replacedCard);
-						legalActions.add(buyAction);
-					}
-				} // end observed trading card handling
-			} // end has at least 1 ruble to buy observed card
+			if (playerRubles[playerTurn] > 1) { // all buys require at least 1 ruble
+				numMoves = generateBuyMoves(moves, numMoves, observedCard, SPMove.OBSERVED, 0, numUnusedObservatories);
+			}
 		} // end observed card handling
 		else if (phase == PUB_ACTION) {
-			// Determine the number of pubs the player has
-			int numPubs = (int) playerBuildings.get(playerTurn).stream().filter(c -> c.name.equals("Pub")).count();
-			int maxPoints = numPubs * 5; // Each Pub can purchase up to 5 points at 2 rubles/point
+			int maxPoints = numPubs[playerTurn] * 5; // Each Pub can purchase up to 5 points at 2 rubles/point
 			int rubles = playerRubles[playerTurn];
 			for (int points = 0; points <= maxPoints && 2 * points <= rubles; points++) {
-				legalActions.add(new SPPubPointsAction(this, points));
+				moves[numMoves++] = SPMove.pack(SPMove.PUB_POINTS, 0, points, null, 0);
 			}
 		}
 		// Otherwise, is it a normal pass/observe/buy/add-to-hand decision.
 		else {
-			
+
 			// Add pass action
-			legalActions.add(new SPPassAction(this));
-			
-			// Add buy actions
-			int rubles = playerRubles[playerTurn];
+			moves[numMoves++] = SPMove.pack(SPMove.PASS, 0, 0, null, 0);
 
-			if (rubles > 0) { // all buys require at least 1 ruble
-
-				ArrayList<ArrayList<SPCard>> cardSources = new ArrayList<>();
-				cardSources.add(playerHands.get(playerTurn)); // Player's hand
-				cardSources.add(upperCardRow);
-				cardSources.add(lowerCardRow);
-
-				for (ArrayList<SPCard> cardSource : cardSources) {
-					for (SPCard card : cardSource) {
-						int cost = card.cost;
-						if (cardSource == lowerCardRow) {
-							cost--; // Lower row cards cost 1 less
-						}
-						if (card.isBuilding && hasBuildingDiscount) {
-							cost--; // Building costs are reduced by 1 if the player has the Carpenter Workshop
-						}
-						if (card.isAristocrat && hasAristocratDiscount) {
-							cost--; // Aristocrat costs are reduced by 1 if the player has the Gold Smelter
-						}
-						// Determine the destination for the card
-						ArrayList<SPCard> cardDestination = null;
-						if (card.isWorker) {
-							cardDestination = playerWorkers.get(playerTurn);
-						} else if (card.isBuilding) {
-							cardDestination = playerBuildings.get(playerTurn);
-						} else if (card.isAristocrat) {
-							cardDestination = playerAristocrats.get(playerTurn);
-						}
-						// Reduce the cost by 1 for each same card in the destination
-						for (SPCard c : cardDestination) {
-							if (c == card) {
-								cost--;
-							}
-						}
-						// If the card is not a trading card, create a buy action if affordable
-						if (!card.isTrading) {
-							if (cost < 1) {
-								cost = 1; // Ensure the cost is not less than 1
-							}
-							if (rubles >= cost) {
-								// Create a buy action for the card
-								SPBuyAction buyAction = new SPBuyAction(this, card, cardSource, cardDestination, cost);
-								legalActions.add(buyAction);
-							}
-						} else { // If the card is a trading card, create a buy action(s) with replaced card(s)
-							// Compute the replaceable cards with associated costs
-							Map<SPCard, Integer> replaceableCards = new HashMap<>();
-							for (SPCard c : cardDestination) {
-								if (c.isTrading) {
-									continue; // cannot replace trading cards with trading cards
-								}
-														// Worker trading cards have to replace compatible worker cards
-								if (c.isWorker) {
-									// determine if the trading card can replace the worker card
-									if (!c.name.equals("Czar and Carpenter")) // automatically compatible
-									{
-										String cardNotes = card.other;
-										// if the card notes has the string "replaces ",
-										// then extract the trading card name thereafter to the end of the string
-										int index = cardNotes.indexOf("replaces ");
-										String replacedWorkerType = cardNotes.substring(index + 9).trim();
-										if (!c.name.equalsIgnoreCase(replacedWorkerType)) {
-											continue; // incompatible worker card
-										}
-									}
-								}
-								int replaceCost = cost - c.cost; // Cost of replacing the card
-								if (c.name.equals("Observatory")) {
-									if (numUnusedObservatories < 1) {
-										continue; // Cannot replace an Observatory if none are left unused
-									}
-								}
-								if (card.name.endsWith("Village")) {
-									replaceCost -= 4; // Potjomkin's/Potemkin Village credits 6 while only costing 2
-								}
-								if (replaceCost < 1) {
-									replaceCost = 1; // Ensure the cost is not less than 1
-								}
-								if (rubles >= replaceCost) {
-									replaceableCards.put(c, replaceCost); // Add the card and its cost to the map
-								}
-							}
-							// Create a buy action for each replaceable card
-							for (Map.Entry<SPCard, Integer> entry : replaceableCards.entrySet()) {
-								SPCard replacedCard = entry.getKey();
-								int replaceCost = entry.getValue();
-								SPBuyAction buyAction = new SPBuyAction(this, card, cardSource, cardDestination, replaceCost, replacedCard);
-								legalActions.add(buyAction);
-							}
-						} // end trading card handling
-					} // end for each card in card source
-				} // end for each card source
+			// Add buy actions
+			if (playerRubles[playerTurn] > 0) { // all buys require at least 1 ruble
+				ArrayList<SPCard> hand = playerHands.get(playerTurn);
+				for (int i = 0; i < hand.size(); i++) {
+					numMoves = generateBuyMoves(moves, numMoves, hand.get(i), SPMove.HAND, i, numUnusedObservatories);
+				}
+				for (int i = 0; i < upperCardRow.size(); i++) {
+					numMoves = generateBuyMoves(moves, numMoves, upperCardRow.get(i), SPMove.UPPER_ROW, i, numUnusedObservatories);
+				}
+				for (int i = 0; i < lowerCardRow.size(); i++) {
+					numMoves = generateBuyMoves(moves, numMoves, lowerCardRow.get(i), SPMove.LOWER_ROW, i, numUnusedObservatories);
+				}
 			} // end buy actions
 
 			// Add observe actions
 			if (numUnusedObservatories > 0) { // Only add observe actions if the player has unused observatories
 				if (workerDeck.size() > 1) {
-					legalActions.add(new SPObserveDeckAction(this, 0));
+					moves[numMoves++] = SPMove.pack(SPMove.OBSERVE, 0, WORKER, null, 0);
 				}
 				if (buildingDeck.size() > 1) {
-					legalActions.add(new SPObserveDeckAction(this, 1));
+					moves[numMoves++] = SPMove.pack(SPMove.OBSERVE, 0, BUILDING, null, 0);
 				}
 				if (aristocratDeck.size() > 1) {
-					legalActions.add(new SPObserveDeckAction(this, 2));
+					moves[numMoves++] = SPMove.pack(SPMove.OBSERVE, 0, ARISTOCRAT, null, 0);
 				}
 				if (tradingDeck.size() > 1) {
-					legalActions.add(new SPObserveDeckAction(this, 3));
+					moves[numMoves++] = SPMove.pack(SPMove.OBSERVE, 0, TRADING, null, 0);
 				}
 			} // end observe actions
 
 			// Add add-to-hand actions
-
 			if (hasRoomInHand) {
 				// Add actions to add cards from the upper card row to the player's hand
-				for (SPCard card : upperCardRow) {
-					legalActions.add(new SPAddToHandAction(this, card, upperCardRow));
+				for (int i = 0; i < upperCardRow.size(); i++) {
+					moves[numMoves++] = SPMove.pack(SPMove.ADD_TO_HAND, SPMove.UPPER_ROW, i, null, 0);
 				}
 				// Add actions to add cards from the lower card row to the player's hand
-				for (SPCard card : lowerCardRow) {
-					legalActions.add(new SPAddToHandAction(this, card, lowerCardRow));
+				for (int i = 0; i < lowerCardRow.size(); i++) {
+					moves[numMoves++] = SPMove.pack(SPMove.ADD_TO_HAND, SPMove.LOWER_ROW, i, null, 0);
 				}
 			}
 		} // end else for normal actions
-		return legalActions;
+		return numMoves;
+	}
+
+	// Write the buy move(s) for a card at the given index of a source into the buffer, returning the new number of moves
+	private int generateBuyMoves(int[] moves, int numMoves, SPCard card, int source, int index, int numUnusedObservatories) {
+		int rubles = playerRubles[playerTurn];
+		int cost = card.cost;
+		if (source == SPMove.LOWER_ROW) {
+			cost--; // Lower row cards cost 1 less
+		}
+		if (card.isBuilding && numBuildingDiscounts[playerTurn] > 0) {
+			cost--; // Building costs are reduced by 1 if the player has the Carpenter Workshop
+		}
+		if (card.isAristocrat && numAristocratDiscounts[playerTurn] > 0) {
+			cost--; // Aristocrat costs are reduced by 1 if the player has the Gold Smelter
+		}
+		// Reduce the cost by 1 for each same card in the destination
+		cost -= playerCardCounts[playerTurn][card.id];
+
+		// If the card is not a trading card, create a buy action if affordable
+		if (!card.isTrading) {
+			if (cost < 1) {
+				cost = 1; // Ensure the cost is not less than 1
+			}
+			if (rubles >= cost) {
+				moves[numMoves++] = SPMove.pack(SPMove.BUY, source, index, null, cost);
+			}
+			return numMoves;
+		}
+
+		// If the card is a trading card, create a buy action for each distinct replaceable card, in order of first occurrence
+		long offeredCards = 0L; // bitset of replaceable card ids already offered
+		long replaceableCards = card.getReplaceableCards();
+		for (SPCard c : getHoldings(playerTurn, card)) {
+			if ((replaceableCards & 1L << c.id) == 0) {
+				continue; // trading card or incompatible worker card
+			}
+			if (c.hasEffect(SPCard.OBSERVATORY)) {
+				if (numUnusedObservatories < 1) {
+					continue; // Cannot replace an Observatory if none are left unused
+				}
+			}
+			int replaceCost = cost - c.tradeValue; // Cost of replacing the card
+			if (replaceCost < 1) {
+				replaceCost = 1; // Ensure the cost is not less than 1
+			}
+			if (rubles >= replaceCost && (offeredCards & 1L << c.id) == 0) {
+				offeredCards |= 1L << c.id;
+				moves[numMoves++] = SPMove.pack(SPMove.BUY, source, index, c, replaceCost);
+			}
+		}
+		return numMoves;
+	}
+
+	// The player zone a card is bought into
+	public ArrayList<SPCard> getHoldings(int player, SPCard card) {
+		switch (getHoldingPhase(card)) {
+			case WORKER:
+				return playerWorkers.get(player);
+			case BUILDING:
+				return playerBuildings.get(player);
+			default:
+				return playerAristocrats.get(player);
+		}
+	}
+
+	// The card zone of an SPMove source, or null for the observed card
+	private ArrayList<SPCard> getMoveSource(int source) {
+		switch (source) {
+			case SPMove.HAND:
+				return playerHands.get(playerTurn);
+			case SPMove.UPPER_ROW:
+				return upperCardRow;
+			case SPMove.LOWER_ROW:
+				return lowerCardRow;
+			default:
+				return null;
+		}
+	}
+
+	// Produce the SPAction for a packed move generated by generateMoves() for this state
+	public SPAction decodeMove(int move) {
+		int source = SPMove.source(move);
+		switch (SPMove.kind(move)) {
+			case SPMove.PASS:
+				return new SPPassAction(this);
+			case SPMove.DISCARD:
+				return new SPDiscardAction(this);
+			case SPMove.OBSERVE:
+				return new SPObserveDeckAction(this, SPMove.index(move));
+			case SPMove.PUB_POINTS:
+				return new SPPubPointsAction(this, SPMove.index(move));
+			case SPMove.ADD_TO_HAND: {
+				ArrayList<SPCard> cardRow = getMoveSource(source);
+				SPCard card = cardRow == null ? observedCard : cardRow.get(SPMove.index(move));
+				return new SPAddToHandAction(this, card, cardRow);
+			}
+			case SPMove.BUY: {
+				ArrayList<SPCard> cardSource = getMoveSource(source);
+				SPCard card = cardSource == null ? observedCard : cardSource.get(SPMove.index(move));
+				ArrayList<SPCard> cardDestination = getHoldings(playerTurn, card);
+				SPCard replacedCard = SPMove.replacedCard(move);
+				if (replacedCard == null) {
+					return new SPBuyAction(this, card, cardSource, cardDestination, SPMove.cost(move));
+				}
+				return new SPBuyAction(this, card, cardSource, cardDestination, SPMove.cost(move), replacedCard);
+			}
+			default:
+				throw new IllegalArgumentException("Unknown move code: " + move);
+		}
 	}
 
 	public static void main(String[] args) {
@@ -0,0 +1,22 @@
+import java.util.List;
+
+/* SPStateEvaluator - A heuristic evaluation of states for search: the win probability of the player to move, as the
+ * predict() of the feature classes gives it.  predictBatch() evaluates several states at once.  Its default evaluates
+ * them one by one; only a model with a real batched evaluation, such as the networks of SPStateFeaturesNN1 and
+ * JFMTStateFeaturesNN1, overrides it.
+ */
+@FunctionalInterface
+public interface SPStateEvaluator {
+
+	// The win probability of the player to move in the state
+	double predict(SPState state);
+
+	// The win probabilities of the states, as predict() gives them for each
+	default double[] predictBatch(List<SPState> states) {
+		double[] winProbs = new double[states.size()];
+		for (int i = 0; i < winProbs.length; i++) {
+			winProbs[i] = predict(states.get(i));
+		}
+		return winProbs;
+	}
+}
@@ -35,7 +35,7 @@ import org.deeplearning4j.earlystopping.scorecalc.DataSetLossCalculator;
 // However, instead of using logistic regression, it uses a neural network model from the DJ4J library.
 
 
-public class SPStateFeaturesNN1 {
+public class SPStateFeaturesNN1 implements SPStateEvaluator {
     String modelFilename = "SPNN1.model";
     ArrayList<SPFeature> features;
     // Serializable DL4J neural network model
@@ -307,6 +307,31 @@ public class SPStateFeaturesNN1 {
         return model.output(features, false).getDouble(0);
     }
 
+    // Predict the win probabilities of several states, as predict() does for each, in one forward pass of the network,
+    // whose fixed cost per call would otherwise dominate
+    @Override
+    public double[] predictBatch(List<SPState> states) {
+        return predictBatch(model, features, states);
+    }
+
+    // The win probabilities of the states from a network taking the given features, in one forward pass
+    static double[] predictBatch(MultiLayerNetwork model, List<SPFeature> features, List<SPState> states) {
+        double[][] featureValues = new double[states.size()][features.size()];
+        for (int row = 0; row < states.size(); row++) {
+            for (int i = 0; i < features.size(); i++) {
+                Object value = features.get(i).getValue(states.get(row));
+                featureValues[row][i] = (value instanceof Number) ? ((Number) value).doubleValue() : 0.0;
+            }
+        }
+        INDArray input = Nd4j.createFromArray(featureValues).castTo(Nd4j.defaultFloatingPointType());
+        INDArray output = model.output(input, false); // shape: [states, 1]
+        double[] winProbs = new double[states.size()];
+        for (int row = 0; row < winProbs.length; row++) {
+            winProbs[row] = output.getDouble(row, 0);
+        }
+        return winProbs;
+    }
+
     // min_deck_size – the number of cards in the smallest phase deck
     class SPFeatureMinDeckSize extends SPFeature {
         public SPFeatureMinDeckSize() {
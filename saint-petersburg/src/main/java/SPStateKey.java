@@ -0,0 +1,178 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.SplittableRandom;
+
+/* SPStateKey - Canonical form of an SPState for transposition tables and evaluation caches.
+ * Hands, holdings, decks and each market row are multisets in the game, so the key is invariant to the order of cards
+ * within them, while still distinguishing the upper row from the lower row.  The discard pile is left out: it holds
+ * exactly the cards that are in no other zone.  Equal keys mean the same position, but legal action indices of the two
+ * states may differ, since getLegalActions() follows list order; caches should store values, not action indices.
+ * hash(state) computes the 64-bit key without allocating, for use where a rare collision is acceptable.
+ */
+public final class SPStateKey {
+
+	private static final int NUM_CARDS = SPCard.NUM_ALL_CARDS;
+	private static final int MAX_PLAYERS = 4;
+	// Multiset slots: a hand and holdings per player, the two market rows, and the decks
+	private static final int UPPER_ROW_SLOT = 2 * MAX_PLAYERS;
+	private static final int LOWER_ROW_SLOT = UPPER_ROW_SLOT + 1;
+	private static final int FIRST_DECK_SLOT = LOWER_ROW_SLOT + 1;
+	private static final long[][] CARD_KEYS = new long[FIRST_DECK_SLOT + SPState.NUM_DECKS][NUM_CARDS];
+
+	static {
+		SplittableRandom random = new SplittableRandom(42L); // fixed seed, so keys are the same in every run
+		for (long[] keys : CARD_KEYS) {
+			for (int id = 0; id < NUM_CARDS; id++) {
+				keys[id] = random.nextLong();
+			}
+		}
+	}
+
+	private final int[] canonical; // scalars followed by per-slot card counts
+	private final long key;
+
+	public SPStateKey(SPState state) {
+		if (state.numPlayers > MAX_PLAYERS) {
+			throw new IllegalArgumentException("State keys support at most " + MAX_PLAYERS + " players, not " + state.numPlayers);
+		}
+		int numScalars = 5 + SPState.NUM_DECKS + 5 * state.numPlayers;
+		int numSlots = FIRST_DECK_SLOT + SPState.NUM_DECKS;
+		canonical = new int[numScalars + numSlots * NUM_CARDS];
+		int i = putScalars(state, canonical);
+		for (int player = 0; player < state.numPlayers; player++) {
+			countCards(state.playerHands.get(player), canonical, i + player * NUM_CARDS);
+			System.arraycopy(state.playerCardCounts[player], 0, canonical, i + (MAX_PLAYERS + player) * NUM_CARDS, NUM_CARDS);
+		}
+		countCards(state.upperCardRow, canonical, i + UPPER_ROW_SLOT * NUM_CARDS);
+		countCards(state.lowerCardRow, canonical, i + LOWER_ROW_SLOT * NUM_CARDS);
+		for (int deck = 0; deck < SPState.NUM_DECKS; deck++) {
+			countCards(state.getZone(deck), canonical, i + (FIRST_DECK_SLOT + deck) * NUM_CARDS);
+		}
+		key = hash(state);
+	}
+
+	// The 64-bit key
+	public long getKey() {
+		return key;
+	}
+
+	// Write the scalar state into the array, returning the number of ints written
+	private static int putScalars(SPState state, int[] scalars) {
+		int i = 0;
+		scalars[i++] = state.numPlayers;
+		scalars[i++] = state.round;
+		scalars[i++] = state.phase;
+		scalars[i++] = state.playerTurn;
+		scalars[i++] = state.observedCard == null ? -1 : state.observedCard.id;
+		for (int deck = 0; deck < SPState.NUM_DECKS; deck++) {
+			scalars[i++] = state.startingPlayer[deck];
+		}
+		for (int player = 0; player < state.numPlayers; player++) {
+			scalars[i++] = state.playerRubles[player];
+			scalars[i++] = state.playerPoints[player];
+			scalars[i++] = state.playerPassed[player] ? 1 : 0;
+			scalars[i++] = state.usedObservatories[player];
+			scalars[i++] = state.isWinner[player] ? 1 : 0;
+		}
+		return i;
+	}
+
+	private static void countCards(ArrayList<SPCard> cards, int[] counts, int offset) {
+		for (SPCard card : cards) {
+			counts[offset + card.id]++;
+		}
+	}
+
+	// The 64-bit canonical key of the state: a mix of the scalars plus a sum of random keys over the cards of each
+	// multiset slot, which is independent of card order and, unlike an XOR, does not cancel duplicate cards
+	public static long hash(SPState state) {
+		if (state.numPlayers > MAX_PLAYERS) {
+			throw new IllegalArgumentException("State keys support at most " + MAX_PLAYERS + " players, not " + state.numPlayers);
+		}
+		long hash = 0;
+		hash = mix(hash, state.numPlayers);
+		hash = mix(hash, state.round);
+		hash = mix(hash, state.phase);
+		hash = mix(hash, state.playerTurn);
+		hash = mix(hash, state.observedCard == null ? -1 : state.observedCard.id);
+		for (int deck = 0; deck < SPState.NUM_DECKS; deck++) {
+			hash = mix(hash, state.startingPlayer[deck]);
+		}
+		for (int player = 0; player < state.numPlayers; player++) {
+			hash = mix(hash, state.playerRubles[player]);
+			hash = mix(hash, state.playerPoints[player]);
+			hash = mix(hash, (state.playerPassed[player] ? 1 : 0) | (state.isWinner[player] ? 2 : 0));
+			hash = mix(hash, state.usedObservatories[player]);
+		}
+		long cards = 0;
+		for (int player = 0; player < state.numPlayers; player++) {
+			cards += sumKeys(state.playerHands.get(player), CARD_KEYS[player]);
+			long[] holdingKeys = CARD_KEYS[MAX_PLAYERS + player];
+			int[] counts = state.playerCardCounts[player];
+			for (int id = 0; id < NUM_CARDS; id++) {
+				cards += counts[id] * holdingKeys[id];
+			}
+		}
+		cards += sumKeys(state.upperCardRow, CARD_KEYS[UPPER_ROW_SLOT]);
+		cards += sumKeys(state.lowerCardRow, CARD_KEYS[LOWER_ROW_SLOT]);
+		for (int deck = 0; deck < SPState.NUM_DECKS; deck++) {
+			cards += sumKeys(state.getZone(deck), CARD_KEYS[FIRST_DECK_SLOT + deck]);
+		}
+		return mix(hash, cards);
+	}
+
+	private static long sumKeys(ArrayList<SPCard> cards, long[] keys) {
+		long sum = 0;
+		for (SPCard card : cards) {
+			sum += keys[card.id];
+		}
+		return sum;
+	}
+
+	// Combine a value into a hash with the SplitMix64 finalizer
+	private static long mix(long hash, long value) {
+		long z = hash * 0x9E3779B97F4A7C15L + value;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof SPStateKey && key == ((SPStateKey) other).key
+				&& Arrays.equals(canonical, ((SPStateKey) other).canonical);
+	}
+
+	@Override
+	public int hashCode() {
+		return Long.hashCode(key);
+	}
+
+	public static void main(String[] args) {
+		// Check that keys ignore card order within zones and that distinct positions of random games get distinct keys
+		java.util.Random random = new java.util.Random(0);
+		java.util.HashMap<Long, SPStateKey> seen = new java.util.HashMap<>();
+		int numStates = 0;
+		for (int game = 0; game < 200; game++) {
+			SPState state = new SPState();
+			while (!state.isGameOver()) {
+				SPState shuffled = state.clone();
+				for (int zone = 0; zone < shuffled.getNumZones(); zone++) {
+					Collections.shuffle(shuffled.getZone(zone), random);
+				}
+				SPStateKey key = new SPStateKey(state);
+				if (!key.equals(new SPStateKey(shuffled)) || key.getKey() != hash(shuffled)) {
+					throw new IllegalStateException("Key depends on card order:\n" + state);
+				}
+				SPStateKey previous = seen.putIfAbsent(key.getKey(), key);
+				if (previous != null && !previous.equals(key)) {
+					throw new IllegalStateException("64-bit key collision:\n" + state);
+				}
+				numStates++;
+				state.getLegalActions().get(random.nextInt(state.getLegalActions().size())).take(random.nextLong());
+			}
+		}
+		System.out.println(numStates + " states: keys are independent of card order and free of collisions.");
+	}
+}
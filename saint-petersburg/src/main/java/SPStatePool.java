@@ -0,0 +1,29 @@
+import java.util.ArrayDeque;
+
+/* SPStatePool - A small per-thread pool of scratch SPStates for search loops that copy a state per sample.
+ * borrow() returns a pooled state overwritten in place with SPState.copyFrom(), and release() returns it for reuse.
+ * A released state must not be used again by the caller.  Pools are thread-local, so no synchronization is needed.
+ */
+public final class SPStatePool {
+
+	public static final int MAX_POOLED_STATES = 64; // Released states beyond this are left to the garbage collector
+
+	private static final ThreadLocal<ArrayDeque<SPState>> POOL = ThreadLocal.withInitial(ArrayDeque::new);
+
+	private SPStatePool() {
+	}
+
+	// A scratch copy of the given state, from this thread's pool if one is available
+	public static SPState borrow(SPState source) {
+		SPState state = POOL.get().pollFirst();
+		return state == null ? source.clone() : state.copyFrom(source);
+	}
+
+	// Return a borrowed state to this thread's pool
+	public static void release(SPState state) {
+		ArrayDeque<SPState> pool = POOL.get();
+		if (pool.size() < MAX_POOLED_STATES) {
+			pool.addFirst(state);
+		}
+	}
+}
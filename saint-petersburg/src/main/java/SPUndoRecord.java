@@ -0,0 +1,184 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/* SPUndoRecord - Records what an SPAction changes in an SPState so that SPAction.undo() can restore the state exactly.
+ * Scalar state (rubles, points, passed flags, phase, turn, ...) is saved before the action is taken, and each zone edit
+ * (card added, removed, or overwritten) and holdings aggregate update is logged as the action makes it.  Records are reusable; search code typically
+ * keeps one record per ply and walks a single mutable state down and back up the tree.
+ */
+public class SPUndoRecord {
+
+	private static final int ADD = 0; // card appended to a zone
+	private static final int REMOVE = 1; // card removed from a zone index
+	private static final int SET = 2; // card at a zone index overwritten
+	private static final int HOLD = 3; // card bought into a player's holdings
+	private static final int UNHOLD = 4; // card replaced out of a player's holdings
+
+	// Saved scalar state
+	private int round, phase, playerTurn, numForcedMoves;
+	private SPCard observedCard;
+	private int[] playerRubles, playerPoints, startingPlayer, usedObservatories;
+	private boolean[] playerPassed, isWinner;
+
+	// Zone edit log
+	private int numEdits = 0;
+	private int[] editTypes = new int[16];
+	private int[] editIndices = new int[16];
+	private SPCard[] editCards = new SPCard[16];
+	private int[] editZones = new int[16]; // zone indices, see SPState.getZone()
+
+	// Save the scalar state before an action is taken and clear the zone edit log
+	void save(SPState state) {
+		round = state.round;
+		phase = state.phase;
+		playerTurn = state.playerTurn;
+		numForcedMoves = state.numForcedMoves;
+		observedCard = state.observedCard;
+		playerRubles = copy(state.playerRubles, playerRubles);
+		playerPoints = copy(state.playerPoints, playerPoints);
+		startingPlayer = copy(state.startingPlayer, startingPlayer);
+		usedObservatories = copy(state.usedObservatories, usedObservatories);
+		playerPassed = copy(state.playerPassed, playerPassed);
+		isWinner = copy(state.isWinner, isWinner);
+		for (int i = 0; i < numEdits; i++) {
+			editCards[i] = null; // release references
+		}
+		numEdits = 0;
+	}
+
+	private static int[] copy(int[] source, int[] destination) {
+		if (destination == null || destination.length != source.length) {
+			return source.clone();
+		}
+		System.arraycopy(source, 0, destination, 0, source.length);
+		return destination;
+	}
+
+	private static boolean[] copy(boolean[] source, boolean[] destination) {
+		if (destination == null || destination.length != source.length) {
+			return source.clone();
+		}
+		System.arraycopy(source, 0, destination, 0, source.length);
+		return destination;
+	}
+
+	private void log(int type, int zone, int index, SPCard card) {
+		if (numEdits == editTypes.length) {
+			int capacity = 2 * numEdits;
+			editTypes = Arrays.copyOf(editTypes, capacity);
+			editIndices = Arrays.copyOf(editIndices, capacity);
+			editCards = Arrays.copyOf(editCards, capacity);
+			editZones = Arrays.copyOf(editZones, capacity);
+		}
+		editTypes[numEdits] = type;
+		editZones[numEdits] = zone;
+		editIndices[numEdits] = index;
+		editCards[numEdits] = card;
+		numEdits++;
+	}
+
+	// Log that a card was appended to the zone
+	void added(SPState state, int zone) {
+		log(ADD, zone, state.getZone(zone).size() - 1, null);
+	}
+
+	// Log that the card was removed from the zone at the given index
+	void removed(int zone, int index, SPCard card) {
+		log(REMOVE, zone, index, card);
+	}
+
+	// Log that the card at the given index of the zone is about to be overwritten
+	void overwritten(SPState state, int zone, int index) {
+		log(SET, zone, index, state.getZone(zone).get(index));
+	}
+
+	// Log that the holdings aggregates of the player were updated for the card
+	void holdingsUpdated(int player, SPCard card, int delta) {
+		log(delta > 0 ? HOLD : UNHOLD, -1, player, card);
+	}
+
+	// Restore the state to what it was when save() was called, undoing edits in reverse order
+	void restore(SPState state) {
+		for (int i = numEdits - 1; i >= 0; i--) {
+			switch (editTypes[i]) {
+				case HOLD:
+					state.updateHoldings(editIndices[i], editCards[i], -1);
+					break;
+				case UNHOLD:
+					state.updateHoldings(editIndices[i], editCards[i], 1);
+					break;
+				case ADD:
+					ArrayList<SPCard> zone = state.getWritableZone(editZones[i]);
+					zone.remove(zone.size() - 1);
+					break;
+				case REMOVE:
+					state.getWritableZone(editZones[i]).add(editIndices[i], editCards[i]);
+					break;
+				case SET:
+					state.getWritableZone(editZones[i]).set(editIndices[i], editCards[i]);
+					break;
+			}
+			editCards[i] = null;
+		}
+		numEdits = 0;
+		state.round = round;
+		state.phase = phase;
+		state.playerTurn = playerTurn;
+		state.numForcedMoves = numForcedMoves;
+		state.observedCard = observedCard;
+		System.arraycopy(playerRubles, 0, state.playerRubles, 0, playerRubles.length);
+		System.arraycopy(playerPoints, 0, state.playerPoints, 0, playerPoints.length);
+		System.arraycopy(startingPlayer, 0, state.startingPlayer, 0, startingPlayer.length);
+		System.arraycopy(usedObservatories, 0, state.usedObservatories, 0, usedObservatories.length);
+		System.arraycopy(playerPassed, 0, state.playerPassed, 0, playerPassed.length);
+		System.arraycopy(isWinner, 0, state.isWinner, 0, isWinner.length);
+	}
+
+	public static void main(String[] args) {
+		// Check that undo restores the state exactly: take and undo every legal action, then continue the game with one
+		// on a copy-on-write clone, checking at the end of the game that no earlier state was changed by a later one
+		int numGames = 200;
+		java.util.Random random = new java.util.Random(0);
+		SPUndoRecord undo = new SPUndoRecord();
+		for (int game = 0; game < numGames; game++) {
+			SPState state = new SPState();
+			ArrayList<SPState> history = new ArrayList<>();
+			ArrayList<SPCompactState> historyCompact = new ArrayList<>();
+			while (!state.isGameOver()) {
+				SPCompactState before = new SPCompactState(state);
+				ArrayList<SPAction> actions = state.getLegalActions();
+				for (SPAction action : actions) {
+					action.take(random.nextLong(), undo);
+					action.undo(state, undo);
+					if (!before.matches(state)) {
+						throw new IllegalStateException("Undo of " + action + " did not restore the state:\n" + state);
+					}
+				}
+				history.add(state);
+				historyCompact.add(before);
+				state = state.cowClone();
+				actions.get(random.nextInt(actions.size())).take(state, SPAction.seededCardRandom(random.nextLong()), null);
+				SPState recomputed = state.clone();
+				recomputed.recomputeAggregates();
+				if (!Arrays.equals(recomputed.numWarehouses, state.numWarehouses) || !Arrays.equals(recomputed.numObservatories, state.numObservatories)
+						|| !Arrays.equals(recomputed.numPubs, state.numPubs) || !Arrays.equals(recomputed.numBuildingDiscounts, state.numBuildingDiscounts)
+						|| !Arrays.equals(recomputed.numAristocratDiscounts, state.numAristocratDiscounts)
+						|| !Arrays.equals(recomputed.numMariinskij, state.numMariinskij) || !Arrays.equals(recomputed.numTaxMen, state.numTaxMen)
+						|| !Arrays.deepEquals(recomputed.playerPointsPerPhase, state.playerPointsPerPhase)
+						|| !Arrays.deepEquals(recomputed.playerRublesPerPhase, state.playerRublesPerPhase)
+						|| !Arrays.equals(recomputed.playerPointsPerRound, state.playerPointsPerRound)
+						|| !Arrays.equals(recomputed.playerRublesPerRound, state.playerRublesPerRound)
+						|| !Arrays.equals(recomputed.playerUniqueAristocrats, state.playerUniqueAristocrats)
+						|| !Arrays.deepEquals(recomputed.playerCardCounts, state.playerCardCounts)) {
+					throw new IllegalStateException("Holdings aggregates out of date:\n" + state);
+				}
+			}
+			for (int i = 0; i < history.size(); i++) {
+				if (!historyCompact.get(i).matches(history.get(i))) {
+					throw new IllegalStateException("Copy-on-write state changed after it was cloned:\n" + history.get(i));
+				}
+			}
+		}
+		System.out.println(numGames + " games: undo restored every action, holdings aggregates stayed current and copy-on-write clones were isolated.");
+	}
+}